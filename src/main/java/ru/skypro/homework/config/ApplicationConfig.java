@@ -2,18 +2,21 @@ package ru.skypro.homework.config;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import ru.skypro.homework.service.impl.FileService;
 
 import javax.annotation.PostConstruct;
 
 /**
  * Конфигурационный класс приложения.
- * Выполняет инициализацию необходимых компонентов при запуске приложения.
+ * Выполняет инициализацию необходимых компонентов при запуске приложения
+ * и включает выполнение фоновых задач по расписанию.
  *
  * @author Система управления объявлениями
  * @version 1.0
  */
 @Configuration
+@EnableScheduling
 @RequiredArgsConstructor
 public class ApplicationConfig {
 
@@ -21,8 +24,8 @@ public class ApplicationConfig {
 
     /**
      * Метод инициализации приложения.
-     * Вызывается после создания всех бинов и выполняет начальную настройку файловой системы.
-     * Создает необходимые директории для хранения изображений, если они не существуют.
+     * Вызывается после создания всех бинов и выполняет начальную настройку хранилища изображений.
+     * Создает корневую директорию или бакет для изображений, если они не существуют.
      *
      * @throws RuntimeException если не удалось создать директории для загрузок
      */
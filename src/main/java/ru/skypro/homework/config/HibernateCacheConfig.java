@@ -0,0 +1,117 @@
+package ru.skypro.homework.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.spi.CachingProvider;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кэш второго уровня Hibernate на Caffeine через JCache.
+ *
+ * <p>Кэшируются пользователи (регион {@value #USERS_REGION}) и объявления
+ * ({@value #ADS_REGION}), а также результаты запросов, помеченных как кэшируемые,
+ * например поиск пользователя по email. Регионы создаются заранее с ограничением
+ * размера и временем жизни, неизвестный регион считается ошибкой конфигурации.
+ * Регион меток обновления таблиц не ограничивается: по нему Hibernate определяет,
+ * устарел ли результат запроса.</p>
+ *
+ * <p>Изменения через сущности и запросы {@code update}/{@code delete} на HQL сбрасывают
+ * кэш сами: Hibernate блокирует записи до фиксации транзакции, а после массового
+ * изменения очищает регион целиком. Изменения, выполненные мимо Hibernate (JDBC),
+ * должны сбрасывать записи явно через {@link javax.persistence.Cache#evict}.
+ * Кэш локален для узла: изменения с других узлов видны не дольше {@code ttl-seconds}.
+ * Данные, прочитанные с реплик, в кэш не кладутся, см. {@link ReplicaReadJpaDialect}.</p>
+ *
+ * <p>Метрики регионов публикуются как {@code cache.*} с тегом
+ * {@code cache=hibernate.<регион>}.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    /** Регион кэша пользователей */
+    public static final String USERS_REGION = "users";
+
+    /** Регион кэша объявлений */
+    public static final String ADS_REGION = "ads";
+
+    /**
+     * Создает менеджер кэшей и регионы второго уровня.
+     * Менеджер создается отдельным провайдером, поэтому не делится между контекстами Spring.
+     *
+     * @param meterRegistry реестр метрик
+     * @param ttlSeconds    время жизни записей сущностей и результатов запросов
+     * @param usersMaxSize  максимальное число пользователей в кэше
+     * @param adsMaxSize    максимальное число объявлений в кэше
+     * @param queryMaxSize  максимальное число результатов запросов в кэше
+     * @return менеджер кэшей Hibernate
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(MeterRegistry meterRegistry,
+                                              @Value("${app.jpa.cache.ttl-seconds:60}") long ttlSeconds,
+                                              @Value("${app.jpa.cache.users-max-size:10000}") long usersMaxSize,
+                                              @Value("${app.jpa.cache.ads-max-size:10000}") long adsMaxSize,
+                                              @Value("${app.jpa.cache.query-max-size:10000}") long queryMaxSize) {
+        CachingProvider provider = new CaffeineCachingProvider();
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        OptionalLong ttl = OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds));
+        createRegion(cacheManager, meterRegistry, USERS_REGION, OptionalLong.of(usersMaxSize), ttl);
+        createRegion(cacheManager, meterRegistry, ADS_REGION, OptionalLong.of(adsMaxSize), ttl);
+        createRegion(cacheManager, meterRegistry, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                OptionalLong.of(queryMaxSize), ttl);
+        // Вытесненная метка сделала бы устаревший результат запроса снова действительным
+        createRegion(cacheManager, meterRegistry, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                OptionalLong.empty(), OptionalLong.empty());
+        return cacheManager;
+    }
+
+    /**
+     * Подключает кэш второго уровня и кэш запросов к Hibernate.
+     * Их можно выключить свойствами {@code spring.jpa.properties.hibernate.cache.*}, например в тестах,
+     * считающих запросы к базе данных.
+     *
+     * @param hibernateCacheManager менеджер кэшей с созданными регионами
+     * @return настройка свойств Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.putIfAbsent(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.putIfAbsent(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    private static void createRegion(CacheManager cacheManager, MeterRegistry meterRegistry, String name,
+                                     OptionalLong maxSize, OptionalLong ttlNanos) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        // Hibernate кладет в кэш неизменяемые разобранные состояния, копировать их не нужно
+        configuration.setStoreByValue(false);
+        configuration.setMaximumSize(maxSize);
+        configuration.setExpireAfterWrite(ttlNanos);
+        configuration.setNativeStatisticsEnabled(true);
+
+        Cache<Object, Object> cache = cacheManager.createCache(name, configuration);
+        com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache =
+                cache.unwrap(com.github.benmanes.caffeine.cache.Cache.class);
+        CaffeineCacheMetrics.monitor(meterRegistry, nativeCache, "hibernate." + name);
+    }
+}
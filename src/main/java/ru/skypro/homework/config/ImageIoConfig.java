@@ -0,0 +1,49 @@
+package ru.skypro.homework.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+
+/**
+ * Конфигурация пула потоков для чтения и записи изображений.
+ * Работа с диском выполняется в отдельном пуле, поэтому медленный диск
+ * занимает потоки этого пула, а потоки Tomcat остаются свободными для JSON-запросов.
+ * Размеры пула задаются свойствами {@code app.images.io.*}.
+ *
+ * <p>Метрики пула публикуются автоматически как {@code executor.*}
+ * с тегом {@code name=imageIoExecutor}.</p>
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Configuration
+public class ImageIoConfig {
+
+    /**
+     * Создает пул потоков ввода-вывода изображений.
+     * Когда пул и очередь заполнены, новые задачи отклоняются,
+     * а клиент получает ответ 503.
+     *
+     * @param coreSize     число постоянных потоков
+     * @param maxSize      максимальное число потоков
+     * @param queueCapacity размер очереди задач
+     * @return пул потоков
+     */
+    @Bean
+    public ThreadPoolTaskExecutor imageIoExecutor(@Value("${app.images.io.core-size:8}") int coreSize,
+                                                  @Value("${app.images.io.max-size:32}") int maxSize,
+                                                  @Value("${app.images.io.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("image-io-");
+        // Транзакции после записи файла выполняются от имени пользователя запроса
+        executor.setTaskDecorator(DelegatingSecurityContextRunnable::new);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -0,0 +1,142 @@
+package ru.skypro.homework.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Конфигурация чтения с реплик PostgreSQL, включается свойством
+ * {@code app.datasource.replicas.enabled=true}.
+ *
+ * <p>Основной сервер настраивается обычными свойствами {@code spring.datasource.*},
+ * реплики перечисляются в {@code app.datasource.replicas.urls} и по умолчанию используют
+ * те же учетные данные. Транзакции {@code readOnly = true} выполняются на репликах,
+ * остальные запросы и миграции Flyway на основном сервере,
+ * см. {@link ReplicaRoutingDataSource}. Без этого свойства используется один
+ * источник данных Spring Boot.</p>
+ *
+ * <p>Метрики пулов реплик публикуются как {@code hikaricp.*} с тегом
+ * {@code pool=replica-N}, число доступных реплик как {@code db.replicas.healthy}.</p>
+ *
+ * <p>Данные реплик не попадают в кэш второго уровня Hibernate, см. {@link ReplicaReadJpaDialect}.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    /**
+     * Пул соединений основного сервера, настраивается свойствами {@code spring.datasource.hikari.*}.
+     *
+     * @param properties свойства {@code spring.datasource.*}
+     * @return пул соединений основного сервера
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Создает пулы соединений реплик и источник, выбирающий между ними и основным сервером.
+     *
+     * @param primaryDataSource       пул соединений основного сервера
+     * @param properties              свойства {@code spring.datasource.*}
+     * @param urls                    JDBC URL реплик
+     * @param username                пользователь реплик
+     * @param password                пароль реплик
+     * @param poolSize                максимальный размер пула каждой реплики
+     * @param connectionTimeoutMs     время ожидания соединения с репликой до перехода к следующей
+     * @param maxLagMs                допустимое отставание реплики, 0 - не проверять
+     * @param readYourWritesMs        окно чтения своих изменений с основного сервера, 0 - выключено
+     * @return маршрутизирующий источник соединений
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            @Value("${app.datasource.replicas.urls}") String[] urls,
+            @Value("${app.datasource.replicas.username:${spring.datasource.username}}") String username,
+            @Value("${app.datasource.replicas.password:${spring.datasource.password}}") String password,
+            @Value("${app.datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${app.datasource.replicas.connection-timeout-ms:1000}") long connectionTimeoutMs,
+            @Value("${app.datasource.replicas.max-lag-ms:0}") long maxLagMs,
+            @Value("${app.datasource.replicas.read-your-writes-ms:0}") long readYourWritesMs) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (replicas.size() + 1));
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setConnectionTimeout(connectionTimeoutMs);
+            // Недоступная при запуске реплика не мешает старту, она будет исключена проверкой
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+        if (replicas.isEmpty()) {
+            throw new IllegalStateException("Чтение с реплик включено, но app.datasource.replicas.urls не задан");
+        }
+
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas,
+                maxLagMs, readYourWritesMs, (int) Math.max(1, connectionTimeoutMs / 1000));
+    }
+
+    /**
+     * Источник данных приложения: соединение выбирается при первом запросе транзакции,
+     * когда уже известно, только ли она читает.
+     *
+     * @param replicaRoutingDataSource маршрутизирующий источник соединений
+     * @return источник данных для JPA, JDBC и Flyway
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+        // Значения по умолчанию PostgreSQL и Hikari; иначе за ними прокси обращается к основному серверу
+        // при открытии первой транзакции, и первое чтение тоже уходит на него
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return proxy;
+    }
+
+    /**
+     * Подключает к фабрике менеджеров сущностей диалект, который не кладет в кэш второго
+     * уровня данные транзакций {@code readOnly}; менеджер транзакций берет диалект из фабрики.
+     * Диалект задается до инициализации фабрики, иначе она возьмет диалект по умолчанию.
+     *
+     * @return обработчик бинов, настраивающий фабрику менеджеров сущностей
+     */
+    @Bean
+    public static BeanPostProcessor replicaReadJpaDialectPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof AbstractEntityManagerFactoryBean) {
+                    ((AbstractEntityManagerFactoryBean) bean).setJpaDialect(new ReplicaReadJpaDialect());
+                }
+                return bean;
+            }
+        };
+    }
+}
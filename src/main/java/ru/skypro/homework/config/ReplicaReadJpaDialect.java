@@ -0,0 +1,71 @@
+package ru.skypro.homework.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+
+/**
+ * Диалект JPA для чтения с реплик: транзакции {@code readOnly = true} читают кэш
+ * второго уровня, но не кладут в него загруженные сущности и результаты запросов.
+ *
+ * <p>Такие транзакции выполняются на репликах, которые могут отставать от основного
+ * сервера. Кэш общий для всех запросов узла, поэтому строка, прочитанная с отстающей
+ * реплики, отдавалась бы из него до {@code ttl-seconds} и пишущим транзакциям,
+ * и пользователям в окне {@code read-your-writes-ms}. Кэш заполняют только
+ * транзакции на основном сервере.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ *
+ * @see ReplicaDataSourceConfig
+ * @see HibernateCacheConfig
+ */
+public class ReplicaReadJpaDialect extends HibernateJpaDialect {
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws PersistenceException, SQLException, TransactionException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!definition.isReadOnly()) {
+            return transactionData;
+        }
+        // Режим задается свойством JPA, а не режимом кэша сессии: find() вычисляет режим из свойств
+        Object previousStoreMode = entityManager.getProperties().get(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE);
+        entityManager.setProperty(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        return new ReadOnlyTransactionData(transactionData, entityManager,
+                previousStoreMode != null ? previousStoreMode : CacheStoreMode.USE);
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReadOnlyTransactionData) {
+            ReadOnlyTransactionData readOnly = (ReadOnlyTransactionData) transactionData;
+            // Менеджер сущностей может пережить транзакцию, если она присоединилась к уже открытому
+            readOnly.entityManager.setProperty(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE,
+                    readOnly.previousStoreMode);
+            transactionData = readOnly.transactionData;
+        }
+        super.cleanupTransaction(transactionData);
+    }
+
+    /**
+     * Данные транзакции базового диалекта и режим записи в кэш, который нужно вернуть.
+     */
+    private static final class ReadOnlyTransactionData {
+        final Object transactionData;
+        final EntityManager entityManager;
+        final Object previousStoreMode;
+
+        ReadOnlyTransactionData(Object transactionData, EntityManager entityManager, Object previousStoreMode) {
+            this.transactionData = transactionData;
+            this.entityManager = entityManager;
+            this.previousStoreMode = previousStoreMode;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package ru.skypro.homework.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Источник соединений, который направляет транзакции {@code readOnly = true} на реплики,
+ * а все остальные запросы на основной сервер.
+ *
+ * <p>Реплики выбираются по кругу среди доступных. Реплика, к которой не удалось
+ * подключиться, исключается до следующей успешной проверки по расписанию; проверка
+ * также исключает реплики с отставанием больше {@code max-lag-ms}. Если у реплики
+ * просто заняты все соединения пула, она не исключается, а чтение переходит к следующей.
+ * Если доступных реплик нет, чтение выполняется на основном сервере.</p>
+ *
+ * <p>Признак readOnly известен только после начала транзакции, поэтому источник
+ * используется через {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * настоящее соединение берется при первом запросе, а не при открытии транзакции.</p>
+ *
+ * <p>Если задано окно {@code read-your-writes-ms}, после фиксации пишущей транзакции
+ * пользователя его чтения в течение окна выполняются на основном сервере, и он сразу
+ * видит свои изменения. Пользователь определяется по контексту безопасности потока.</p>
+ *
+ * <p>Метрики пулов реплик и число доступных реплик регистрируются через {@link MeterBinder},
+ * а не при создании источника: реестр метрик при создании сам запрашивает все источники
+ * данных, и зависимость от него замкнулась бы в цикл.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ *
+ * @see ReplicaDataSourceConfig
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements MeterBinder, AutoCloseable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+    /** Ключ ресурса транзакции, которая уже получила соединение с репликой */
+    private static final Object REPLICA_IN_USE = new Object();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final long maxLagMs;
+    private final int validationTimeoutSeconds;
+
+    /** Пользователи, недавно изменившие данные; null, если окно выключено */
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<HikariDataSource> replicas,
+                                    long maxLagMs, long readYourWritesMs, int validationTimeoutSeconds) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).collect(Collectors.toList());
+        this.maxLagMs = maxLagMs;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.recentWriters = readYourWritesMs > 0
+                ? Caffeine.newBuilder().expireAfterWrite(Duration.ofMillis(readYourWritesMs)).build()
+                : null;
+    }
+
+    /**
+     * Выполняет действие с чтением на основном сервере, даже внутри транзакции readOnly.
+     * Используется, когда результат кэшируется и устаревшие данные реплики недопустимы.
+     * Без маршрутизации по репликам просто выполняет действие.
+     *
+     * <p>Соединение, уже полученное текущей транзакцией, не меняется: если транзакция
+     * успела прочитать с реплики, действие тоже читает с нее. Такой результат нельзя
+     * считать свежим, это проверяется через {@link #isReplicaInUse()}.</p>
+     *
+     * @param action действие
+     * @param <T>    тип результата
+     * @return результат действия
+     */
+    public static <T> T usePrimary(Supplier<T> action) {
+        if (PRIMARY_ONLY.get() != null) {
+            return action.get();
+        }
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            PRIMARY_ONLY.remove();
+        }
+    }
+
+    /**
+     * @return true, если текущая транзакция уже получила соединение с репликой
+     *         и {@link #usePrimary} в ней не действует
+     */
+    public static boolean isReplicaInUse() {
+        return TransactionSynchronizationManager.hasResource(REPLICA_IN_USE);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            rememberWriter();
+            return primary.getConnection();
+        }
+        if (PRIMARY_ONLY.get() != null || wroteRecently()) {
+            return primary.getConnection();
+        }
+
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                markReplicaInUse();
+                return connection;
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) {
+                    replica.markDown(e.getMessage());
+                } else {
+                    log.debug("Нет свободных соединений с репликой {}", replica.dataSource.getPoolName());
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Соединения с другими учетными данными не поддерживаются");
+    }
+
+    /**
+     * Проверяет реплики, в том числе исключенные, и возвращает восстановившиеся.
+     */
+    @Scheduled(initialDelayString = "${app.datasource.replicas.health-check-ms:5000}",
+            fixedDelayString = "${app.datasource.replicas.health-check-ms:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (!connection.isValid(validationTimeoutSeconds)) {
+                    replica.markDown("соединение не прошло проверку");
+                    continue;
+                }
+                long lag = maxLagMs > 0 ? lagMs(connection) : 0;
+                if (maxLagMs > 0 && lag > maxLagMs) {
+                    replica.markDown("отставание " + lag + " мс");
+                    continue;
+                }
+                replica.markUp();
+            } catch (SQLException e) {
+                // Пул, занятый запросами, не говорит о недоступности реплики
+                if (isConnectionFailure(e)) {
+                    replica.markDown(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Публикует метрики пулов реплик ({@code hikaricp.*} с тегом {@code pool=replica-N})
+     * и число доступных реплик ({@code db.replicas.healthy}).
+     *
+     * @param registry реестр метрик
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        MicrometerMetricsTrackerFactory trackerFactory = new MicrometerMetricsTrackerFactory(registry);
+        replicas.forEach(replica -> replica.dataSource.setMetricsTrackerFactory(trackerFactory));
+        Gauge.builder("db.replicas.healthy", this, ReplicaRoutingDataSource::healthyReplicas)
+                .description("Реплики, доступные для чтения")
+                .register(registry);
+    }
+
+    /**
+     * @return количество доступных реплик
+     */
+    public int healthyReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.healthy).count();
+    }
+
+    /**
+     * Закрывает пулы соединений реплик; пулом основного сервера управляет Spring.
+     */
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    // Время с момента последней примененной транзакции. Если реплика применила все полученное,
+    // отставания нет: иначе при простаивающем основном сервере оно росло бы без новых записей
+    private static long lagMs(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select case "
+                     + "when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 "
+                     + "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000, 0) end")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Hikari сообщает о нехватке соединений в пуле исключением SQLTransientConnectionException
+     * без причины; если соединения не удается создать, причиной указывается ошибка подключения.
+     */
+    private static boolean isConnectionFailure(SQLException e) {
+        return !(e instanceof SQLTransientConnectionException) || e.getCause() != null;
+    }
+
+    private static void markReplicaInUse() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(REPLICA_IN_USE)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(REPLICA_IN_USE, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(REPLICA_IN_USE);
+            }
+        });
+    }
+
+    private boolean wroteRecently() {
+        if (recentWriters == null) {
+            return false;
+        }
+        String user = currentUser();
+        return user != null && recentWriters.getIfPresent(user) != null;
+    }
+
+    private void rememberWriter() {
+        if (recentWriters == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        String user = currentUser();
+        if (user == null) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentWriters.put(user, Boolean.TRUE);
+            }
+        });
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    /**
+     * Реплика и ее доступность.
+     */
+    private static final class Replica {
+        final HikariDataSource dataSource;
+        volatile boolean healthy = true;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        void markDown(String reason) {
+            if (healthy) {
+                log.warn("Реплика {} исключена из чтения: {}", dataSource.getPoolName(), reason);
+            }
+            healthy = false;
+        }
+
+        void markUp() {
+            if (!healthy) {
+                log.info("Реплика {} снова используется для чтения", dataSource.getPoolName());
+            }
+            healthy = true;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.skypro.homework.config;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика SQL-запросов, выполненных текущим потоком между {@link #start()} и {@link #stop()}.
+ *
+ * <p>Учитываются все обращения к источнику данных приложения, в том числе через JDBC
+ * мимо Hibernate. Пакет JDBC считается одним обращением. Запросы, выполненные другими
+ * потоками (фоновые задачи, отложенная запись комментариев), в статистику не попадают.</p>
+ *
+ * <p>Для поиска N+1 запоминается, сколько раз выполнялся каждый текст запроса:
+ * одинаковый текст с разными параметрами, повторенный много раз, обычно означает
+ * ленивую загрузку связи в цикле.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ *
+ * @see SqlStatisticsConfig
+ */
+public final class SqlStatistics {
+
+    private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Integer> executions = new HashMap<>();
+    private int statements;
+    private long elapsedNanos;
+    private long startedAt;
+
+    private SqlStatistics() {
+    }
+
+    /**
+     * Начинает сбор статистики в текущем потоке, заменяя начатый ранее.
+     *
+     * @return статистика текущего потока
+     */
+    public static SqlStatistics start() {
+        SqlStatistics statistics = new SqlStatistics();
+        CURRENT.set(statistics);
+        return statistics;
+    }
+
+    /**
+     * Завершает сбор статистики в текущем потоке.
+     *
+     * @return собранная статистика или null, если сбор не был начат
+     */
+    public static SqlStatistics stop() {
+        SqlStatistics statistics = CURRENT.get();
+        CURRENT.remove();
+        return statistics;
+    }
+
+    /**
+     * @return статистика текущего потока или null, если сбор не начат
+     */
+    public static SqlStatistics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return количество обращений к базе данных
+     */
+    public int getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return суммарное время выполнения запросов в наносекундах
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Находит запрос, выполненный больше всего раз.
+     *
+     * @return текст запроса и число выполнений или null, если запросов не было
+     */
+    public Map.Entry<String, Integer> mostRepeated() {
+        return executions.entrySet().stream().max(Map.Entry.comparingByValue()).orElse(null);
+    }
+
+    /**
+     * Слушатель datasource-proxy, передающий выполненные запросы в статистику текущего потока.
+     *
+     * @return слушатель запросов
+     */
+    static QueryExecutionListener listener() {
+        return new QueryExecutionListener() {
+            @Override
+            public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+                SqlStatistics statistics = CURRENT.get();
+                if (statistics != null) {
+                    statistics.startedAt = System.nanoTime();
+                }
+            }
+
+            @Override
+            public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+                SqlStatistics statistics = CURRENT.get();
+                if (statistics == null) {
+                    return;
+                }
+                statistics.statements++;
+                statistics.elapsedNanos += System.nanoTime() - statistics.startedAt;
+                for (QueryInfo query : queryInfoList) {
+                    statistics.executions.merge(query.getQuery(), 1, Integer::sum);
+                }
+            }
+        };
+    }
+}
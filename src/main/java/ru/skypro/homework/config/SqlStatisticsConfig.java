@@ -0,0 +1,50 @@
+package ru.skypro.homework.config;
+
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Подсчет SQL-запросов по HTTP-запросам, включается свойством {@code app.sql-statistics.enabled=true}.
+ *
+ * <p>Источник данных приложения оборачивается прокси datasource-proxy, который передает
+ * каждый выполненный запрос в {@link SqlStatistics} текущего потока. Сбор статистики
+ * начинает и публикует {@link ru.skypro.homework.filter.SqlStatisticsFilter}.
+ * При чтении с реплик оборачивается только итоговый источник {@code dataSource},
+ * поэтому запрос не учитывается дважды.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sql-statistics.enabled", havingValue = "true")
+public class SqlStatisticsConfig {
+
+    /** Имя источника данных, который используют JPA, JDBC и Flyway */
+    private static final String DATA_SOURCE_BEAN = "dataSource";
+
+    /**
+     * Оборачивает источник данных приложения прокси, считающим запросы.
+     * Метод статический, чтобы обработчик создавался раньше источника данных.
+     *
+     * @return обработчик бинов
+     */
+    @Bean
+    public static BeanPostProcessor sqlStatisticsDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource) || !DATA_SOURCE_BEAN.equals(beanName)) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create(beanName, (DataSource) bean)
+                        .listener(SqlStatistics.listener())
+                        .build();
+            }
+        };
+    }
+}
@@ -3,6 +3,7 @@ package ru.skypro.homework.config;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -46,12 +47,16 @@ public class WebSecurityConfig {
             "/ads/*",
             "/ads/*/image",
             "/ads/*/comments",
+            "/ads/*/comments/stream",
+            "/users",
             "/users/*/image"
     };
 
     /**
      * Конфигурирует цепочку фильтров безопасности.
      * Настраивает CORS, отключает CSRF, определяет правила авторизации и включает HTTP Basic аутентификацию.
+     * Метрики и состояние приложения ({@code /actuator/**}) доступны только администраторам.
+     * Удаление пользователей и просмотр хода удаления также доступны только администраторам.
      * Использует CustomUserDetailsManager для аутентификации пользователей.
      *
      * @param http объект HttpSecurity для настройки
@@ -66,6 +71,9 @@ public class WebSecurityConfig {
                 .authorizeHttpRequests(authorization ->
                         authorization
                                 .mvcMatchers(AUTH_WHITELIST).permitAll()
+                                .mvcMatchers("/actuator/**").hasRole("ADMIN")
+                                .mvcMatchers(HttpMethod.DELETE, "/users/*").hasRole("ADMIN")
+                                .mvcMatchers("/users/deletions/**").hasRole("ADMIN")
                                 .mvcMatchers("/ads/**", "/users/**").authenticated())
                 .httpBasic(withDefaults());
         return http.build();
@@ -13,11 +13,13 @@ import ru.skypro.homework.dto.*;
 import ru.skypro.homework.service.AdService;
 
 import javax.validation.Valid;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Контроллер для управления объявлениями.
  * Обрабатывает HTTP запросы, связанные с созданием, получением, обновлением и удалением объявлений.
- * Поддерживает загрузку и получение изображений для объявлений.
+ * Поддерживает загрузку и получение изображений для объявлений; эти запросы обрабатываются
+ * асинхронно, и поток Tomcat освобождается, пока файл читается или пишется.
  *
  * @author Контроллер объявлений
  * @version 1.0
@@ -37,11 +39,11 @@ public class AdController {
     }
 
     @PostMapping(value = "/ads", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Ad> addAd(@RequestPart("properties") @Valid CreateOrUpdateAd properties,
-                                    @RequestPart("image") MultipartFile image,
-                                    Authentication authentication) {
-        Ad ad = adService.addAd(properties, image, authentication);
-        return ResponseEntity.status(HttpStatus.CREATED).body(ad);
+    public CompletableFuture<ResponseEntity<Ad>> addAd(@RequestPart("properties") @Valid CreateOrUpdateAd properties,
+                                                       @RequestPart("image") MultipartFile image,
+                                                       Authentication authentication) {
+        return adService.addAd(properties, image, authentication)
+                .thenApply(ad -> ResponseEntity.status(HttpStatus.CREATED).body(ad));
     }
 
     @GetMapping("/ads/{id}")
@@ -104,20 +106,21 @@ public class AdController {
      */
     @PatchMapping(value = "/ads/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @PreAuthorize("hasRole('ADMIN') or @adServiceImpl.isAdAuthor(#id, authentication)")
-    public ResponseEntity<?> updateAdImage(@PathVariable Integer id,
-                                           @RequestParam("image") MultipartFile image,
-                                           Authentication authentication) {
-        adService.updateAdImage(id, image, authentication);
-        return ResponseEntity.ok().build();
+    public CompletableFuture<ResponseEntity<Void>> updateAdImage(@PathVariable Integer id,
+                                                                 @RequestParam("image") MultipartFile image,
+                                                                 Authentication authentication) {
+        return adService.updateAdImage(id, image, authentication)
+                .thenApply(ignored -> ResponseEntity.ok().build());
     }
 
     @GetMapping(value = "/ads/{id}/image", produces = {MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE})
-    public ResponseEntity<byte[]> getAdImage(@PathVariable Integer id) {
-        byte[] image = adService.getAdImage(id);
-        if (image.length > 0) {
-            return ResponseEntity.ok(image);
-        } else {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
+    public CompletableFuture<ResponseEntity<byte[]>> getAdImage(@PathVariable Integer id) {
+        return adService.getAdImage(id).thenApply(image -> {
+            if (image.length > 0) {
+                return ResponseEntity.ok(image);
+            } else {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+        });
     }
 }
\ No newline at end of file
@@ -2,15 +2,18 @@ package ru.skypro.homework.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.skypro.homework.dto.Comment;
 import ru.skypro.homework.dto.Comments;
 import ru.skypro.homework.dto.CreateOrUpdateComment;
 import ru.skypro.homework.service.CommentService;
 
 import javax.validation.Valid;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Контроллер для управления комментариями к объявлениям.
@@ -28,17 +31,38 @@ public class CommentController {
     private final CommentService commentService;
 
     /**
-     * Получает все комментарии для указанного объявления.
+     * Получает страницу комментариев для указанного объявления.
+     * Следующая страница запрашивается с курсором из поля {@code next} ответа.
      *
-     * @param id идентификатор объявления
-     * @return ResponseEntity с объектом Comments, содержащим список комментариев
+     * @param id     идентификатор объявления
+     * @param limit  размер страницы (от 1 до 100)
+     * @param order  порядок: desc - сначала новые, asc - сначала старые
+     * @param cursor курсор следующей страницы или null для первой страницы
+     * @return ResponseEntity с объектом Comments, содержащим страницу комментариев
      */
     @GetMapping("/ads/{id}/comments")
-    public ResponseEntity<Comments> getComments(@PathVariable Integer id) {
-        Comments comments = commentService.getComments(id);
+    public ResponseEntity<Comments> getComments(@PathVariable Integer id,
+                                                @RequestParam(defaultValue = "50") int limit,
+                                                @RequestParam(defaultValue = "desc") String order,
+                                                @RequestParam(required = false) String cursor) {
+        Comments comments = commentService.getComments(id, limit, order, cursor);
         return ResponseEntity.ok(comments);
     }
 
+    /**
+     * Открывает поток Server-Sent Events с изменениями комментариев объявления
+     * вместо периодического опроса списка. Приходят события created и updated
+     * с комментарием и deleted с его идентификатором, а также heartbeat-комментарии.
+     * После разрыва потока клиент переподключается и перечитывает первую страницу.
+     *
+     * @param id идентификатор объявления
+     * @return поток событий
+     */
+    @GetMapping(value = "/ads/{id}/comments/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamComments(@PathVariable Integer id) {
+        return commentService.streamComments(id);
+    }
+
     /**
      * Добавляет новый комментарий к объявлению.
      * Автор комментария определяется по текущему аутентифицированному пользователю.
@@ -46,14 +70,14 @@ public class CommentController {
      * @param id идентификатор объявления
      * @param comment DTO с текстом комментария
      * @param authentication объект аутентификации текущего пользователя
-     * @return ResponseEntity с созданным комментарием
+     * @return будущий ResponseEntity с созданным комментарием
      */
     @PostMapping("/ads/{id}/comments")
-    public ResponseEntity<Comment> addComment(@PathVariable Integer id,
-                                              @Valid @RequestBody CreateOrUpdateComment comment,
-                                              Authentication authentication) {
-        Comment newComment = commentService.addComment(id, comment, authentication);
-        return ResponseEntity.ok(newComment);
+    public CompletableFuture<ResponseEntity<Comment>> addComment(@PathVariable Integer id,
+                                                                 @Valid @RequestBody CreateOrUpdateComment comment,
+                                                                 Authentication authentication) {
+        return commentService.addComment(id, comment, authentication)
+                .thenApply(ResponseEntity::ok);
     }
 
     /**
@@ -18,6 +18,11 @@ import ru.skypro.homework.service.UserService;
 
 import javax.validation.Valid;
 import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Контроллер для управления профилем пользователя.
@@ -90,7 +95,7 @@ public class UserController {
     public ResponseEntity<User> getCurrentUser(Authentication authentication) {
         User user = userService.getCurrentUser(authentication);
         if (user != null) {
-            log.info("Получена информация о пользователе: {}", authentication.getName());
+            log.debug("Получена информация о пользователе: {}", authentication.getName());
             return ResponseEntity.ok(user);
         } else {
             log.warn("Пользователь не найден: {}", authentication.getName());
@@ -152,20 +157,30 @@ public class UserController {
             }
     )
     @PatchMapping(value = "/users/me/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<?> updateUserImage(@RequestParam("image") MultipartFile image,
-                                             Authentication authentication) {
+    public CompletableFuture<ResponseEntity<?>> updateUserImage(@RequestParam("image") MultipartFile image,
+                                                                Authentication authentication) {
+        CompletableFuture<Void> update;
         try {
-            userService.updateUserImage(image, authentication);
-            log.info("Аватар пользователя обновлен: {}", authentication.getName());
-            return ResponseEntity.ok().build();
-        } catch (IOException e) {
-            log.error("Ошибка при обновлении аватара: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Ошибка при сохранении изображения");
+            update = userService.updateUserImage(image, authentication);
+        } catch (RejectedExecutionException e) {
+            // Перегрузку пула ввода-вывода обрабатывает GlobalExceptionHandler (503)
+            throw e;
         } catch (RuntimeException e) {
-            log.error("Ошибка при обновлении аватара: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            update = CompletableFuture.failedFuture(e);
         }
+
+        return update.<ResponseEntity<?>>thenApply(ignored -> {
+            log.info("Аватар пользователя обновлен: {}", authentication.getName());
+            return ResponseEntity.ok().build();
+        }).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("Ошибка при обновлении аватара: {}", cause.getMessage());
+            if (cause instanceof IOException) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body("Ошибка при сохранении изображения");
+            }
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(cause.getMessage());
+        });
     }
 
     /**
@@ -182,13 +197,81 @@ public class UserController {
             }
     )
     @GetMapping(value = "/users/{id}/image", produces = {MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE})
-    public ResponseEntity<byte[]> getUserImage(@PathVariable Integer id) {
-        byte[] image = userService.getUserImage(id);
-        if (image != null && image.length > 0) {
-            return ResponseEntity.ok(image);
-        } else {
-            log.warn("Аватар пользователя с ID {} не найден", id);
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
+    public CompletableFuture<ResponseEntity<byte[]>> getUserImage(@PathVariable Integer id) {
+        return userService.getUserImage(id).thenApply(image -> {
+            if (image != null && image.length > 0) {
+                return ResponseEntity.ok(image);
+            } else {
+                log.debug("Аватар пользователя с ID {} не найден", id);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+        });
+    }
+
+    /**
+     * Возвращает публичные профили нескольких пользователей одним запросом,
+     * чтобы страница объявлений или комментариев получала всех авторов сразу.
+     *
+     * @param ids идентификаторы пользователей через запятую (не более 100)
+     * @return ResponseEntity со списком профилей найденных пользователей
+     */
+    @Operation(
+            summary = "Публичные профили пользователей",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request")
+            }
+    )
+    @GetMapping("/users")
+    public ResponseEntity<List<UserProfile>> getUserProfiles(@RequestParam List<Integer> ids) {
+        return ResponseEntity.ok(userService.getUserProfiles(ids));
+    }
+
+    /**
+     * Запускает фоновое удаление пользователя вместе с его объявлениями, комментариями
+     * и изображениями. Доступно только администратору.
+     *
+     * @param id идентификатор пользователя
+     * @param authentication объект аутентификации администратора
+     * @return ResponseEntity со статусом 202 и состоянием задачи; адрес задачи в заголовке Location
+     */
+    @Operation(
+            summary = "Удаление пользователя",
+            security = @SecurityRequirement(name = "basicAuth"),
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Accepted"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden"),
+                    @ApiResponse(responseCode = "404", description = "Not found"),
+                    @ApiResponse(responseCode = "503", description = "Service Unavailable")
+            }
+    )
+    @DeleteMapping("/users/{id}")
+    public ResponseEntity<UserDeletion> deleteUser(@PathVariable Integer id, Authentication authentication) {
+        UserDeletion deletion = userService.deleteUser(id, authentication);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/users/deletions/" + deletion.getId()))
+                .body(deletion);
+    }
+
+    /**
+     * Возвращает ход фонового удаления пользователя.
+     *
+     * @param jobId идентификатор задачи удаления
+     * @return ResponseEntity с состоянием задачи
+     */
+    @Operation(
+            summary = "Ход удаления пользователя",
+            security = @SecurityRequirement(name = "basicAuth"),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden"),
+                    @ApiResponse(responseCode = "404", description = "Not found")
+            }
+    )
+    @GetMapping("/users/deletions/{jobId}")
+    public ResponseEntity<UserDeletion> getUserDeletion(@PathVariable String jobId) {
+        return ResponseEntity.ok(userService.getUserDeletion(jobId));
     }
-}
\ No newline at end of file
+}
@@ -33,4 +33,7 @@ public class Ad {
 
     /** Заголовок объявления */
     private String title;
+
+    /** Количество комментариев к объявлению */
+    private Integer commentCount;
 }
\ No newline at end of file
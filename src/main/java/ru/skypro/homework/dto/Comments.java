@@ -27,4 +27,7 @@ public class Comments {
 
     /** Список комментариев */
     private List<Comment> results;
+
+    /** Курсор следующей страницы или null, если страница последняя */
+    private String next;
 }
\ No newline at end of file
@@ -8,6 +8,8 @@ import lombok.AllArgsConstructor;
 
 import javax.validation.constraints.*;
 
+import static ru.skypro.homework.validation.ValidationRules.*;
+
 /**
  * DTO (Data Transfer Object) для создания или обновления объявления.
  * Используется при добавлении нового объявления или изменении существующего.
@@ -23,15 +25,15 @@ import javax.validation.constraints.*;
 @AllArgsConstructor
 public class CreateOrUpdateAd {
     /** Заголовок объявления (от 4 до 32 символов) */
-    @Size(min = 4, max = 32)
+    @Size(min = AD_TITLE_MIN, max = AD_TITLE_MAX, message = AD_TITLE_SIZE)
     private String title;
 
     /** Цена объявления (от 0 до 10 000 000 рублей) */
-    @Min(0)
-    @Max(10000000)
+    @Min(value = AD_PRICE_MIN, message = AD_PRICE_RANGE)
+    @Max(value = AD_PRICE_MAX, message = AD_PRICE_RANGE)
     private Integer price;
 
     /** Описание объявления (от 8 до 64 символов) */
-    @Size(min = 8, max = 64)
+    @Size(min = AD_DESCRIPTION_MIN, max = AD_DESCRIPTION_MAX, message = AD_DESCRIPTION_SIZE)
     private String description;
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package ru.skypro.homework.dto;
 
 import javax.validation.constraints.*;
 
+import static ru.skypro.homework.validation.ValidationRules.*;
+
 import lombok.Getter;
 import lombok.Setter;
 import lombok.Builder;
@@ -25,7 +27,7 @@ import lombok.AllArgsConstructor;
 
 public class CreateOrUpdateComment {
     /** Текст комментария (обязательное поле, от 8 до 64 символов) */
-    @NotBlank(message = "Текст комментария не может быть пустым")
-    @Size(min = 8, max = 64, message = "Текст комментария должен быть от 8 до 64 символов")
+    @NotBlank(message = COMMENT_TEXT_EMPTY)
+    @Size(min = COMMENT_TEXT_MIN, max = COMMENT_TEXT_MAX, message = COMMENT_TEXT_SIZE)
     private String text;
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import lombok.Setter;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import ru.skypro.homework.validation.ValidationRules;
 
 
 /**
@@ -41,8 +42,7 @@ public class Register {
     private String lastName;
 
     /** Телефон пользователя в формате +7 XXX XXX-XX-XX */
-    @Pattern(regexp = "\\+7\\s?\\(?\\d{3}\\)?\\s?\\d{3}-?\\d{2}-?\\d{2}",
-            message = "Номер телефона должен соответствовать формату: +7 XXX XXX-XX-XX")
+    @Pattern(regexp = ValidationRules.PHONE_REGEXP, message = ValidationRules.PHONE_FORMAT)
     private String phone;
 
     /** Роль пользователя (USER или ADMIN) */
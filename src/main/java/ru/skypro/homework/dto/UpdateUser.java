@@ -2,6 +2,8 @@ package ru.skypro.homework.dto;
 
 import javax.validation.constraints.*;
 
+import static ru.skypro.homework.validation.ValidationRules.*;
+
 import lombok.Getter;
 import lombok.Setter;
 import lombok.Builder;
@@ -24,15 +26,14 @@ import lombok.AllArgsConstructor;
 
 public class UpdateUser {
     /** Имя пользователя (от 3 до 10 символов) */
-    @Size(min = 3, max = 10, message = "Имя должно быть от 3 до 10 символов")
+    @Size(min = USER_NAME_MIN, max = USER_NAME_MAX, message = USER_FIRST_NAME_SIZE)
     private String firstName;
 
     /** Фамилия пользователя (от 3 до 10 символов) */
-    @Size(min = 3, max = 10, message = "Фамилия должна быть от 3 до 10 символов")
+    @Size(min = USER_NAME_MIN, max = USER_NAME_MAX, message = USER_LAST_NAME_SIZE)
     private String lastName;
 
     /** Телефон пользователя в формате +7 XXX XXX-XX-XX */
-    @Pattern(regexp = "\\+7\\s?\\(?\\d{3}\\)?\\s?\\d{3}-?\\d{2}-?\\d{2}",
-            message = "Номер телефона должен соответствовать формату: +7 XXX XXX-XX-XX")
+    @Pattern(regexp = PHONE_REGEXP, message = PHONE_FORMAT)
     private String phone;
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package ru.skypro.homework.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) для представления хода фонового удаления пользователя.
+ *
+ * @author DTO удаления пользователя
+ * @version 1.0
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDeletion {
+    /** Идентификатор задачи удаления */
+    private String id;
+
+    /** Идентификатор удаляемого пользователя */
+    private Integer userId;
+
+    /** Состояние задачи: QUEUED, RUNNING, DONE или FAILED */
+    private String status;
+
+    /** Количество удаленных комментариев, включая комментарии к объявлениям пользователя */
+    private Long commentsDeleted;
+
+    /** Количество удаленных объявлений */
+    private Long adsDeleted;
+
+    /** Количество изображений, поставленных в очередь на удаление */
+    private Long imagesQueued;
+
+    /** Время постановки задачи в миллисекундах с начала эпохи */
+    private Long createdAt;
+
+    /** Время завершения задачи в миллисекундах с начала эпохи или null */
+    private Long finishedAt;
+
+    /** Описание ошибки для задачи в состоянии FAILED */
+    private String message;
+}
@@ -0,0 +1,34 @@
+package ru.skypro.homework.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) для представления публичного профиля пользователя.
+ * Содержит только данные, которые показываются рядом с объявлениями и комментариями,
+ * без логина и телефона.
+ *
+ * @author DTO профиля пользователя
+ * @version 1.0
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserProfile {
+    /** Идентификатор пользователя */
+    private Integer id;
+
+    /** Имя пользователя */
+    private String firstName;
+
+    /** Фамилия пользователя */
+    private String lastName;
+
+    /** Ссылка на аватар пользователя */
+    private String image;
+}
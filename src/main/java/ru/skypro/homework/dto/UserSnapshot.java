@@ -0,0 +1,51 @@
+package ru.skypro.homework.dto;
+
+import lombok.Getter;
+import ru.skypro.homework.entity.UserEntity;
+
+/**
+ * Неизменяемый снимок пользователя, хранимый в кэше пользователей.
+ * В отличие от сущности, не привязан к сессии Hibernate и может использоваться
+ * несколькими потоками одновременно.
+ *
+ * @author Система управления пользователями
+ * @version 1.0
+ */
+@Getter
+public final class UserSnapshot {
+
+    private final Integer id;
+    private final String email;
+    private final String password;
+    private final String firstName;
+    private final String lastName;
+    private final String phone;
+    private final Role role;
+    private final String image;
+
+    private UserSnapshot(UserEntity entity) {
+        this.id = entity.getId();
+        this.email = entity.getEmail();
+        this.password = entity.getPassword();
+        this.firstName = entity.getFirstName();
+        this.lastName = entity.getLastName();
+        this.phone = entity.getPhone();
+        this.role = entity.getRole();
+        this.image = entity.getImage();
+    }
+
+    /**
+     * @param entity сущность пользователя
+     * @return снимок текущего состояния сущности
+     */
+    public static UserSnapshot of(UserEntity entity) {
+        return new UserSnapshot(entity);
+    }
+
+    /**
+     * @return true, если пользователь администратор
+     */
+    public boolean isAdmin() {
+        return role == Role.ADMIN;
+    }
+}
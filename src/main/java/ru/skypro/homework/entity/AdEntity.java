@@ -6,6 +6,10 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import ru.skypro.homework.config.HibernateCacheConfig;
+
 import javax.persistence.*;
 import java.util.List;
 
@@ -19,8 +23,10 @@ import java.util.List;
  *
  * @see UserEntity
  * @see CommentEntity
+ * @see HibernateCacheConfig
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.ADS_REGION)
 @Table(name = "ads")
 @Getter
 @Setter
@@ -48,6 +54,15 @@ public class AdEntity {
     @Column(name = "image")
     private String image;
 
+    /**
+     * Количество комментариев к объявлению.
+     * Поддерживается атомарными UPDATE при добавлении и удалении комментариев,
+     * чтобы списки объявлений показывали счетчик без подсчета строк в comments.
+     * Расхождения исправляет {@link ru.skypro.homework.service.impl.CommentCountRepairJob}.
+     */
+    @Column(name = "comment_count", nullable = false, columnDefinition = "integer default 0")
+    private int commentCount;
+
     /**
      * Автор объявления.
      * Связь многие-к-одному с сущностью пользователя (UserEntity).
@@ -60,8 +75,9 @@ public class AdEntity {
     /**
      * Список комментариев к объявлению.
      * Связь один-ко-многим с сущностью комментария (CommentEntity).
-     * Каскадное удаление и orphanRemoval обеспечивают удаление комментариев при удалении объявления.
+     * Каскад не используется: Hibernate загружал бы все комментарии и удалял их по одному.
+     * Комментарии удаляются одним запросом, см. {@link ru.skypro.homework.repository.CommentRepository#deleteByAd(AdEntity)}.
      */
-    @OneToMany(mappedBy = "ad", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OneToMany(mappedBy = "ad")
     private List<CommentEntity> comments;
 }
\ No newline at end of file
@@ -13,6 +13,8 @@ import java.time.LocalDateTime;
  * Сущность (Entity) для представления комментария в базе данных.
  * Соответствует таблице "comments" в базе данных и содержит информацию о комментарии,
  * включая связи с объявлением и автором комментария.
+ * Индекс по (ad_id, created_at, id) обслуживает постраничную выдачу комментариев
+ * объявления в обоих направлениях без сортировки.
  *
  * @author Сущность комментария
  * @version 1.0
@@ -21,7 +23,9 @@ import java.time.LocalDateTime;
  * @see UserEntity
  */
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = {
+        @Index(name = "idx_comments_ad_created_id", columnList = "ad_id, created_at, id")
+})
 @Getter
 @Setter
 @Builder
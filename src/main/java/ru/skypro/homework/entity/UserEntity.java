@@ -6,6 +6,9 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import ru.skypro.homework.config.HibernateCacheConfig;
 import ru.skypro.homework.dto.Role;
 
 import javax.persistence.*;
@@ -21,9 +24,11 @@ import java.util.List;
  *
  * @see AdEntity
  * @see CommentEntity
+ * @see HibernateCacheConfig
  * @see Role
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.USERS_REGION)
 @Table(name = "users")
 @Getter
 @Setter
@@ -66,16 +71,17 @@ public class UserEntity {
     /**
      * Список объявлений, созданных пользователем.
      * Связь один-ко-многим с сущностью объявления (AdEntity).
-     * Каскадное сохранение обеспечивает сохранение объявлений при сохранении пользователя.
+     * Каскад не используется: удаление пользователя со всеми объявлениями выполняется
+     * фоновой задачей пачками, см. {@link ru.skypro.homework.service.impl.UserDeletionJobs}.
      */
-    @OneToMany(mappedBy = "author", cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "author")
     private List<AdEntity> ads;
 
     /**
      * Список комментариев, созданных пользователем.
      * Связь один-ко-многим с сущностью комментария (CommentEntity).
-     * Каскадное сохранение обеспечивает сохранение комментариев при сохранении пользователя.
+     * Каскад не используется, см. {@link #ads}.
      */
-    @OneToMany(mappedBy = "author", cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "author")
     private List<CommentEntity> comments;
 }
\ No newline at end of file
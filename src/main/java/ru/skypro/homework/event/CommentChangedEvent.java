@@ -0,0 +1,36 @@
+package ru.skypro.homework.event;
+
+import lombok.Getter;
+import ru.skypro.homework.dto.Comment;
+
+/**
+ * Событие об изменении комментариев объявления.
+ * Публикуется внутри транзакции сервиса комментариев и рассылается подписчикам
+ * потока {@code /ads/{id}/comments/stream} только после ее фиксации.
+ *
+ * @author Сервис комментариев
+ * @version 1.0
+ *
+ * @see ru.skypro.homework.service.impl.CommentStreamHub
+ */
+@Getter
+public class CommentChangedEvent {
+
+    /** Вид изменения; имя используется как имя события SSE */
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    /** Идентификатор объявления */
+    private final Integer adId;
+
+    /** Вид изменения */
+    private final Type type;
+
+    /** Комментарий после изменения; для удаленного комментария заполнен только pk */
+    private final Comment comment;
+
+    public CommentChangedEvent(Integer adId, Type type, Comment comment) {
+        this.adId = adId;
+        this.type = type;
+        this.comment = comment;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.skypro.homework.event;
+
+import lombok.Getter;
+
+/**
+ * Событие о том, что файл изображения больше не нужен.
+ * Публикуется внутри транзакции; файл удаляется в фоне только после того,
+ * как транзакция завершится нужным образом:
+ * для замененного или удаленного изображения — после фиксации,
+ * для только что загруженного изображения — после отката.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ *
+ * @see ru.skypro.homework.service.impl.ImageDeletionQueue
+ */
+@Getter
+public class ImageDeletionEvent {
+
+    /** Путь к изображению относительно корня загрузок */
+    private final String path;
+
+    /** true, если файл нужно удалить при откате транзакции, а не при ее фиксации */
+    private final boolean onRollback;
+
+    private ImageDeletionEvent(String path, boolean onRollback) {
+        this.path = path;
+        this.onRollback = onRollback;
+    }
+
+    /**
+     * @param path путь к изображению, на которое больше не ссылается база данных
+     * @return событие, по которому файл удаляется после фиксации транзакции
+     */
+    public static ImageDeletionEvent afterCommit(String path) {
+        return new ImageDeletionEvent(path, false);
+    }
+
+    /**
+     * @param path путь к только что сохраненному изображению
+     * @return событие, по которому файл удаляется, если транзакция откатится
+     */
+    public static ImageDeletionEvent afterRollback(String path) {
+        return new ImageDeletionEvent(path, true);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.skypro.homework.event;
+
+import lombok.Getter;
+
+/**
+ * Событие об изменении или удалении пользователя: профиля, пароля, аватара.
+ * Публикуется внутри транзакции; закэшированные данные пользователя сбрасываются
+ * после ее фиксации.
+ *
+ * @author Система управления пользователями
+ * @version 1.0
+ *
+ * @see ru.skypro.homework.service.impl.UserLookupCache
+ * @see ru.skypro.homework.service.impl.UserProfileCache
+ */
+@Getter
+public class UserChangedEvent {
+
+    /** Идентификатор пользователя */
+    private final Integer userId;
+
+    /** Email пользователя */
+    private final String email;
+
+    public UserChangedEvent(Integer userId, String email) {
+        this.userId = userId;
+        this.email = email;
+    }
+}
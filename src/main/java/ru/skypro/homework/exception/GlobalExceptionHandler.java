@@ -1,6 +1,7 @@
 package ru.skypro.homework.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -13,6 +14,7 @@ import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import javax.validation.ConstraintViolationException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Глобальный обработчик исключений для всего приложения.
@@ -181,6 +183,25 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    /**
+     * Обрабатывает исключения RejectedExecutionException.
+     * Возвращает HTTP статус 503 (Service Unavailable), когда пул потоков ввода-вывода
+     * изображений заполнен, и предлагает повторить запрос позже.
+     *
+     * @param e исключение RejectedExecutionException
+     * @return ResponseEntity с HTTP статусом 503 и заголовком Retry-After
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> handleRejectedExecutionException(RejectedExecutionException e) {
+        log.warn("Пул потоков перегружен: {}", e.getMessage());
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Сервер перегружен, повторите запрос позже");
+        response.put("status", "503");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(response);
+    }
+
     /**
      * Обрабатывает исключения RuntimeException.
      * Возвращает HTTP статус 500 (Internal Server Error) для непредвиденных ошибок выполнения.
@@ -0,0 +1,191 @@
+package ru.skypro.homework.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import ru.skypro.homework.config.SqlStatistics;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтр, считающий SQL-запросы и время базы данных для каждого HTTP-запроса.
+ *
+ * <p>Метрики: {@code http.server.requests.sql.statements} (число обращений к базе
+ * на запрос), {@code http.server.requests.sql.time} (время базы на запрос)
+ * и {@code http.server.requests.sql.repeated} (запросы с вероятным N+1), все с тегами
+ * {@code method} и {@code uri}. Если один текст запроса выполнен не меньше
+ * {@code repeated-statement-threshold} раз, в журнал пишется предупреждение с этим запросом.</p>
+ *
+ * <p>Для разработки и тестов свойство {@code response-headers=true} добавляет в ответ
+ * заголовки {@value #STATEMENTS_HEADER} и {@value #TIME_HEADER}. Они выставляются перед
+ * записью тела ответа; при {@code spring.jpa.open-in-view=false} все запросы к этому
+ * моменту уже выполнены.</p>
+ *
+ * <p>Фильтр стоит первым, поэтому учитываются и запросы аутентификации. Для асинхронных
+ * запросов учитывается только работа до освобождения потока Tomcat.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ *
+ * @see SqlStatistics
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "app.sql-statistics.enabled", havingValue = "true")
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+
+    /** Заголовок ответа с числом обращений к базе данных */
+    public static final String STATEMENTS_HEADER = "X-Sql-Statements";
+
+    /** Заголовок ответа со временем базы данных в миллисекундах */
+    public static final String TIME_HEADER = "X-Sql-Time-Ms";
+
+    private final MeterRegistry meterRegistry;
+    private final int repeatedThreshold;
+    private final boolean responseHeaders;
+
+    public SqlStatisticsFilter(MeterRegistry meterRegistry,
+                               @Value("${app.sql-statistics.repeated-statement-threshold:10}") int repeatedThreshold,
+                               @Value("${app.sql-statistics.response-headers:false}") boolean responseHeaders) {
+        this.meterRegistry = meterRegistry;
+        this.repeatedThreshold = repeatedThreshold;
+        this.responseHeaders = responseHeaders;
+    }
+
+    /**
+     * Собирает статистику на время обработки запроса и публикует ее.
+     *
+     * @param request     HTTP запрос
+     * @param response    HTTP ответ
+     * @param filterChain цепочка фильтров
+     * @throws ServletException если произошла ошибка сервлета
+     * @throws IOException      если произошла ошибка ввода-вывода
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatistics statistics = SqlStatistics.start();
+        HeaderWritingResponse wrapped = responseHeaders ? new HeaderWritingResponse(response, statistics) : null;
+        try {
+            filterChain.doFilter(request, wrapped != null ? wrapped : response);
+            if (wrapped != null) {
+                wrapped.writeHeaders();
+            }
+        } finally {
+            SqlStatistics.stop();
+            record(request, statistics);
+        }
+    }
+
+    private void record(HttpServletRequest request, SqlStatistics statistics) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        String method = request.getMethod();
+
+        DistributionSummary.builder("http.server.requests.sql.statements")
+                .description("Обращения к базе данных на HTTP-запрос")
+                .tag("method", method)
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(statistics.getStatements());
+        Timer.builder("http.server.requests.sql.time")
+                .description("Время базы данных на HTTP-запрос")
+                .tag("method", method)
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(statistics.getElapsedNanos(), TimeUnit.NANOSECONDS);
+
+        Map.Entry<String, Integer> repeated = statistics.mostRepeated();
+        if (repeated != null && repeated.getValue() >= repeatedThreshold) {
+            Counter.builder("http.server.requests.sql.repeated")
+                    .description("HTTP-запросы, повторившие один SQL-запрос много раз (вероятный N+1)")
+                    .tag("method", method)
+                    .tag("uri", uri)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("Вероятный N+1: {} {} выполнил запрос {} раз: {}",
+                    method, uri, repeated.getValue(), repeated.getKey());
+        }
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    /**
+     * Ответ, выставляющий заголовки статистики перед записью тела, пока они еще не отправлены.
+     */
+    private static final class HeaderWritingResponse extends HttpServletResponseWrapper {
+        private final SqlStatistics statistics;
+
+        HeaderWritingResponse(HttpServletResponse response, SqlStatistics statistics) {
+            super(response);
+            this.statistics = statistics;
+        }
+
+        void writeHeaders() {
+            if (!isCommitted()) {
+                setHeader(STATEMENTS_HEADER, String.valueOf(statistics.getStatements()));
+                setHeader(TIME_HEADER, formatMillis(statistics.getElapsedNanos()));
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeHeaders();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeHeaders();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeaders();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeHeaders();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeHeaders();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeHeaders();
+            super.sendRedirect(location);
+        }
+    }
+}
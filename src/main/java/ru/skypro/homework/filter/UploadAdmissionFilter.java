@@ -0,0 +1,250 @@
+package ru.skypro.homework.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фильтр допуска загрузок изображений.
+ * Ограничивает число одновременно обрабатываемых multipart-запросов
+ * (создание объявления, смена изображения объявления и аватара) и их суммарный объем.
+ * Запрос, для которого нет места, недолго ждет в очереди, а затем получает
+ * ответ 503 с заголовком {@code Retry-After}, не занимая поток Tomcat на все время загрузки.
+ *
+ * <p>Фильтр стоит после фильтров безопасности, поэтому место в очереди
+ * занимают только аутентифицированные запросы. Объем запроса берется из
+ * заголовка {@code Content-Length}, а если его нет, считается равным
+ * максимальному размеру запроса.</p>
+ *
+ * <p>Метрики: {@code uploads.admission.queue} (ожидающие запросы),
+ * {@code uploads.admission.active} и {@code uploads.admission.active.bytes}
+ * (обрабатываемые запросы и их объем), {@code uploads.admission.wait}
+ * (время ожидания с тегом outcome) и {@code uploads.admission.rejected}.</p>
+ *
+ * @author Фильтр допуска загрузок
+ * @version 1.0
+ */
+@Slf4j
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    /** Объем загрузок учитывается в килобайтах, чтобы уместить его в счетчик Semaphore */
+    private static final int KILOBYTE = 1024;
+
+    private final ObjectMapper objectMapper;
+    private final Semaphore slots;
+    private final Semaphore kilobytes;
+    private final int maxKilobytes;
+    private final long defaultRequestSize;
+    private final int maxQueue;
+    private final long queueTimeoutMs;
+    private final long retryAfterSeconds;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger inFlightKilobytes = new AtomicInteger();
+    private final Timer admittedTimer;
+    private final Timer rejectedTimer;
+    private final Counter rejected;
+
+    public UploadAdmissionFilter(ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.uploads.admission.max-concurrent:8}") int maxConcurrent,
+                                 @Value("${app.uploads.admission.max-bytes:67108864}") long maxBytes,
+                                 @Value("${app.uploads.admission.max-queue:32}") int maxQueue,
+                                 @Value("${app.uploads.admission.queue-timeout-ms:2000}") long queueTimeoutMs,
+                                 @Value("${app.uploads.admission.retry-after-seconds:5}") long retryAfterSeconds,
+                                 @Value("${spring.servlet.multipart.max-request-size:10MB}") String maxRequestSize) {
+        this.objectMapper = objectMapper;
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.maxKilobytes = (int) Math.min(Integer.MAX_VALUE, toKilobytes(maxBytes));
+        this.kilobytes = new Semaphore(this.maxKilobytes, true);
+        this.defaultRequestSize = DataSize.parse(maxRequestSize).toBytes();
+        this.maxQueue = maxQueue;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        Gauge.builder("uploads.admission.queue", queued, AtomicInteger::get)
+                .description("Загрузки, ожидающие допуска")
+                .register(meterRegistry);
+        Gauge.builder("uploads.admission.active", inFlight, AtomicInteger::get)
+                .description("Загрузки в обработке")
+                .register(meterRegistry);
+        Gauge.builder("uploads.admission.active.bytes", inFlightKilobytes, value -> value.get() * (double) KILOBYTE)
+                .description("Объем загрузок в обработке")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.admittedTimer = Timer.builder("uploads.admission.wait")
+                .description("Время ожидания допуска загрузки")
+                .tag("outcome", "admitted")
+                .register(meterRegistry);
+        this.rejectedTimer = Timer.builder("uploads.admission.wait")
+                .description("Время ожидания допуска загрузки")
+                .tag("outcome", "rejected")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("uploads.admission.rejected")
+                .description("Загрузки, отклоненные с ответом 503")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Фильтр применяется только к multipart-запросам, то есть к загрузкам изображений.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null || !contentType.toLowerCase().startsWith("multipart/");
+    }
+
+    /**
+     * Допускает загрузку, если для нее есть место, и освобождает место
+     * после завершения запроса, в том числе асинхронного.
+     *
+     * @param request     HTTP запрос
+     * @param response    HTTP ответ
+     * @param filterChain цепочка фильтров
+     * @throws ServletException если произошла ошибка сервлета
+     * @throws IOException      если произошла ошибка ввода/вывода
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        long length = request.getContentLengthLong();
+        int requested = (int) Math.min(maxKilobytes, toKilobytes(length >= 0 ? length : defaultRequestSize));
+
+        long started = System.nanoTime();
+        if (!admit(requested)) {
+            rejectedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            rejected.increment();
+            reject(request, response);
+            return;
+        }
+        admittedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+        Runnable release = releaseOnce(requested);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private boolean admit(int requested) {
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+            if (!slots.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+            if (!kilobytes.tryAcquire(requested, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                slots.release();
+                return false;
+            }
+            inFlight.incrementAndGet();
+            inFlightKilobytes.addAndGet(requested);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private Runnable releaseOnce(int requested) {
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlightKilobytes.addAndGet(-requested);
+                inFlight.decrementAndGet();
+                kilobytes.release(requested);
+                slots.release();
+            }
+        };
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.warn("Загрузка отклонена, превышен лимит одновременных загрузок: {} {}",
+                request.getMethod(), request.getRequestURI());
+        Map<String, String> body = new HashMap<>();
+        body.put("message", "Сервер перегружен загрузками, повторите запрос позже");
+        body.put("status", "503");
+
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        // Тело запроса не читается, поэтому соединение не переиспользуется
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private static long toKilobytes(long bytes) {
+        return (bytes + KILOBYTE - 1) / KILOBYTE;
+    }
+
+    /**
+     * Освобождает место после завершения асинхронного запроса.
+     */
+    private static final class ReleasingListener implements AsyncListener {
+        private final Runnable release;
+
+        ReleasingListener(Runnable release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
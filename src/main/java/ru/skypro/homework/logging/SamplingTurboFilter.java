@@ -0,0 +1,105 @@
+package ru.skypro.homework.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фильтр Logback, пропускающий только часть сообщений частых логгеров.
+ *
+ * <p>Правила задаются строкой {@code логгер=N,логгер=N}: логгер и все вложенные в него
+ * пишут каждое N-е сообщение уровня ниже ERROR, остальные отбрасываются до создания
+ * события и форматирования. Ошибки пишутся всегда. Для логгера действует правило
+ * с самым длинным совпадающим именем.</p>
+ *
+ * <p>Фильтр вызывается при каждом обращении к журналу, поэтому для сообщений
+ * выключенного уровня и логгеров без правил он сравнивает только уровень
+ * и читает одну запись из кэша.</p>
+ *
+ * @author Система управления объявлениями
+ * @version 1.0
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    /** Логгеры без правила */
+    private static final Sampler ALL = new Sampler(1);
+
+    private final Map<String, Sampler> rules = new HashMap<>();
+    private final ConcurrentMap<String, Sampler> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * @param rules правила выборки в виде {@code логгер=N,логгер=N}
+     */
+    public void setRules(String rules) {
+        this.rules.clear();
+        this.resolved.clear();
+        for (String rule : rules.split(",")) {
+            if (rule.isBlank()) {
+                continue;
+            }
+            int separator = rule.lastIndexOf('=');
+            try {
+                if (separator <= 0) {
+                    throw new NumberFormatException("нет частоты");
+                }
+                int rate = Integer.parseInt(rule.substring(separator + 1).trim());
+                if (rate > 1) {
+                    this.rules.put(rule.substring(0, separator).trim(), new Sampler(rate));
+                }
+            } catch (NumberFormatException e) {
+                addError("Неверное правило выборки журнала: " + rule.trim());
+            }
+        }
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+                              Object[] params, Throwable t) {
+        // Без format это проверка isXxxEnabled(), а не сообщение
+        if (format == null || level.levelInt >= Level.ERROR_INT
+                || level.levelInt < logger.getEffectiveLevel().levelInt || rules.isEmpty()) {
+            return FilterReply.NEUTRAL;
+        }
+        Sampler sampler = resolved.computeIfAbsent(logger.getName(), this::resolve);
+        return sampler.accept() ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    private Sampler resolve(String name) {
+        String candidate = name;
+        while (true) {
+            Sampler sampler = rules.get(candidate);
+            if (sampler != null) {
+                return sampler;
+            }
+            int dot = candidate.lastIndexOf('.');
+            if (dot < 0) {
+                return ALL;
+            }
+            candidate = candidate.substring(0, dot);
+        }
+    }
+
+    /**
+     * Пропускает каждое N-е сообщение.
+     */
+    private static final class Sampler {
+        private final int rate;
+        private final AtomicLong counter = new AtomicLong();
+
+        Sampler(int rate) {
+            this.rate = rate;
+        }
+
+        boolean accept() {
+            return rate <= 1 || counter.getAndIncrement() % rate == 0;
+        }
+    }
+}
@@ -30,6 +30,7 @@ public class AdMapper {
         ad.setTitle(entity.getTitle());
         ad.setPrice(entity.getPrice());
         ad.setImage(entity.getImage());
+        ad.setCommentCount(entity.getCommentCount());
         return ad;
     }
 
@@ -4,6 +4,8 @@ import org.springframework.stereotype.Component;
 import ru.skypro.homework.dto.Register;
 import ru.skypro.homework.dto.UpdateUser;
 import ru.skypro.homework.dto.User;
+import ru.skypro.homework.dto.UserProfile;
+import ru.skypro.homework.dto.UserSnapshot;
 import ru.skypro.homework.entity.UserEntity;
 
 /**
@@ -54,6 +56,39 @@ public class UserMapper {
         return user;
     }
 
+    /**
+     * Преобразует закэшированный снимок пользователя в DTO пользователя.
+     *
+     * @param snapshot снимок пользователя
+     * @return DTO пользователя для передачи клиенту
+     */
+    public User toDto(UserSnapshot snapshot) {
+        User user = new User();
+        user.setId(snapshot.getId());
+        user.setEmail(snapshot.getEmail());
+        user.setFirstName(snapshot.getFirstName());
+        user.setLastName(snapshot.getLastName());
+        user.setPhone(snapshot.getPhone());
+        user.setRole(snapshot.getRole());
+        user.setImage(snapshot.getImage());
+        return user;
+    }
+
+    /**
+     * Преобразует сущность пользователя в DTO публичного профиля.
+     *
+     * @param entity сущность пользователя из базы данных
+     * @return публичный профиль пользователя
+     */
+    public UserProfile toProfile(UserEntity entity) {
+        UserProfile profile = new UserProfile();
+        profile.setId(entity.getId());
+        profile.setFirstName(entity.getFirstName());
+        profile.setLastName(entity.getLastName());
+        profile.setImage(entity.getImage());
+        return profile;
+    }
+
     /**
      * Обновляет существующую сущность пользователя данными из DTO обновления.
      * Используется для обновления профиля пользователя (имя, фамилия, телефон).
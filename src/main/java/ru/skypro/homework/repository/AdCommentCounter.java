@@ -0,0 +1,22 @@
+package ru.skypro.homework.repository;
+
+/**
+ * Изменение счетчика комментариев объявления без сброса кэша второго уровня объявлений.
+ * Подключается к {@link AdRepository}, реализация - {@link AdCommentCounterImpl}.
+ *
+ * @author Репозиторий объявлений
+ * @version 1.0
+ */
+public interface AdCommentCounter {
+
+    /**
+     * Атомарно изменяет счетчик комментариев объявления на стороне базы данных,
+     * поэтому одновременные добавления и удаления не теряют изменений.
+     * Из кэша второго уровня удаляется только это объявление.
+     *
+     * @param id    идентификатор объявления
+     * @param delta изменение счетчика
+     * @return количество обновленных строк (0 или 1)
+     */
+    int adjustCommentCount(Integer id, int delta);
+}
@@ -0,0 +1,56 @@
+package ru.skypro.homework.repository;
+
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.skypro.homework.entity.AdEntity;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Реализация {@link AdCommentCounter}.
+ *
+ * <p>После массового UPDATE в HQL, как и после SQL-запроса, синхронизированного с таблицей
+ * {@code ads}, Hibernate очищает весь регион кэша объявлений, а счетчик меняется при каждом
+ * добавлении и удалении комментария. Поэтому запрос выполняется в SQL и синхронизируется
+ * с отдельным пространством, которое не затрагивает ни одну кэшируемую сущность, а из кэша
+ * удаляется одно объявление: сразу и после завершения транзакции, так как до фиксации
+ * его прежнее состояние могла снова положить в кэш другая транзакция.</p>
+ *
+ * @author Репозиторий объявлений
+ * @version 1.0
+ */
+public class AdCommentCounterImpl implements AdCommentCounter {
+
+    /** Пространство запроса: никакие сущности и кэшируемые запросы от него не зависят */
+    private static final String COMMENT_COUNT_SPACE = "ads.comment_count";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int adjustCommentCount(Integer id, int delta) {
+        int updated = entityManager
+                .createNativeQuery("update ads set comment_count = comment_count + :delta where id = :id")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(COMMENT_COUNT_SPACE)
+                .setParameter("delta", delta)
+                .setParameter("id", id)
+                .executeUpdate();
+        evict(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(id);
+                }
+            });
+        }
+        return updated;
+    }
+
+    private void evict(Integer id) {
+        entityManager.getEntityManagerFactory().getCache().evict(AdEntity.class, id);
+    }
+}
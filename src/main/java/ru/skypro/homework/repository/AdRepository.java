@@ -1,10 +1,16 @@
 package ru.skypro.homework.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.skypro.homework.entity.AdEntity;
 import ru.skypro.homework.entity.UserEntity;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Репозиторий для работы с объявлениями (сущность AdEntity).
@@ -16,9 +22,10 @@ import java.util.List;
  *
  * @see AdEntity
  * @see UserEntity
+ * @see AdCommentCounter
  * @see org.springframework.data.jpa.repository.JpaRepository
  */
-public interface AdRepository extends JpaRepository<AdEntity, Integer> {
+public interface AdRepository extends JpaRepository<AdEntity, Integer>, AdCommentCounter {
 
     /**
      * Находит все объявления, созданные указанным пользователем.
@@ -41,4 +48,130 @@ public interface AdRepository extends JpaRepository<AdEntity, Integer> {
      * @see AdEntity
      */
     List<AdEntity> findByTitleContainingIgnoreCase(String title);
-}
\ No newline at end of file
+
+    /**
+     * Возвращает следующую пачку путей к изображениям объявлений, упорядоченную по идентификатору.
+     * Используется для постраничного обхода по ключу (keyset) без OFFSET.
+     *
+     * @param afterId  идентификатор, после которого начинается пачка
+     * @param pageable размер пачки
+     * @return идентификаторы и пути к изображениям
+     */
+    @Query("select e.id as id, e.image as image from AdEntity e " +
+            "where e.id > :afterId and e.image is not null order by e.id")
+    List<ImagePath> findImagePathsAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Заменяет путь к изображению, только если он не изменился с момента чтения.
+     * Позволяет фоновым задачам не затирать изображение, загруженное одновременно с ними.
+     *
+     * @param id       идентификатор записи
+     * @param oldImage ожидаемый текущий путь
+     * @param newImage новый путь
+     * @return количество обновленных строк (0 или 1)
+     */
+    @Modifying
+    @Query("update AdEntity e set e.image = :newImage where e.id = :id and e.image = :oldImage")
+    int replaceImage(@Param("id") Integer id,
+                     @Param("oldImage") String oldImage,
+                     @Param("newImage") String newImage);
+
+    /**
+     * Возвращает те из переданных путей к изображениям, на которые ссылаются записи.
+     *
+     * @param images проверяемые пути
+     * @return пути, которые используются
+     */
+    @Query("select e.image from AdEntity e where e.image in :images")
+    List<String> findExistingImages(@Param("images") Collection<String> images);
+
+    /**
+     * Возвращает счетчик комментариев объявления и заодно проверяет, что объявление существует.
+     *
+     * @param id идентификатор объявления
+     * @return количество комментариев или пустой результат, если объявления нет
+     */
+    @Query("select a.commentCount from AdEntity a where a.id = :id")
+    Optional<Integer> findCommentCount(@Param("id") Integer id);
+
+    /**
+     * Блокирует до конца транзакции объявления из диапазона идентификаторов.
+     * Вызывается перед {@link #repairCommentCounts}: после блокировки все изменения счетчиков
+     * в диапазоне зафиксированы, а новые ждут конца транзакции.
+     *
+     * @param fromId нижняя граница диапазона (не включается)
+     * @param toId   верхняя граница диапазона (включается)
+     * @return идентификаторы заблокированных объявлений
+     */
+    @Query(value = "select id from ads where id > :fromId and id <= :toId order by id for update", nativeQuery = true)
+    List<Integer> lockIdRange(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+
+    /**
+     * Пересчитывает счетчики комментариев для объявлений из диапазона идентификаторов.
+     * Обновляются только строки, в которых счетчик разошелся с таблицей comments.
+     *
+     * <p>При READ COMMITTED подзапрос читает снимок начала запроса, даже если UPDATE
+     * дождался блокировки строки, и затер бы счетчик, увеличенный параллельным
+     * добавлением комментария. Поэтому в той же транзакции строки сначала
+     * блокируются {@link #lockIdRange}, и UPDATE выполняется следующим запросом
+     * с новым снимком.</p>
+     *
+     * @param fromId нижняя граница диапазона (не включается)
+     * @param toId   верхняя граница диапазона (включается)
+     * @return количество исправленных объявлений
+     */
+    @Modifying
+    @Query("update AdEntity a set a.commentCount = " +
+            "(select count(c.id) from CommentEntity c where c.ad = a) " +
+            "where a.id > :fromId and a.id <= :toId and a.commentCount <> " +
+            "(select count(c.id) from CommentEntity c where c.ad = a)")
+    int repairCommentCounts(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+
+    /**
+     * @return наибольший идентификатор объявления или пустой результат, если объявлений нет
+     */
+    @Query("select max(a.id) from AdEntity a")
+    Optional<Integer> findMaxId();
+
+    /**
+     * Удаляет объявление одним запросом, без каскадной обработки связей в Hibernate.
+     * Комментарии объявления должны быть удалены до вызова,
+     * см. {@link CommentRepository#deleteByAd(AdEntity)}.
+     *
+     * @param id идентификатор объявления
+     * @return количество удаленных строк (0 или 1)
+     */
+    @Modifying
+    @Query("delete from AdEntity a where a.id = :id")
+    int deleteAdById(@Param("id") Integer id);
+
+    /**
+     * Возвращает те из переданных идентификаторов, для которых существуют объявления.
+     *
+     * @param ids проверяемые идентификаторы
+     * @return идентификаторы существующих объявлений
+     */
+    @Query("select a.id from AdEntity a where a.id in :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Возвращает следующую пачку объявлений автора с путями к изображениям.
+     *
+     * @param authorId идентификатор автора
+     * @param pageable размер пачки
+     * @return идентификаторы объявлений и пути к изображениям
+     */
+    @Query("select e.id as id, e.image as image from AdEntity e where e.author.id = :authorId order by e.id")
+    List<ImagePath> findImagePathsByAuthor(@Param("authorId") Integer authorId, Pageable pageable);
+
+    /**
+     * Удаляет объявления по идентификаторам одним запросом.
+     * Комментарии к ним должны быть удалены до вызова.
+     *
+     * @param ids идентификаторы объявлений
+     * @return количество удаленных объявлений
+     */
+    @Modifying
+    @Query("delete from AdEntity a where a.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
+}
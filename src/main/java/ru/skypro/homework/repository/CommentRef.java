@@ -0,0 +1,18 @@
+package ru.skypro.homework.repository;
+
+/**
+ * Проекция для выборки идентификатора комментария и его объявления
+ * без загрузки всей сущности.
+ * Используется при удалении комментариев пачками с пересчетом счетчиков объявлений.
+ *
+ * @author Репозиторий комментариев
+ * @version 1.0
+ */
+public interface CommentRef {
+
+    /** @return идентификатор комментария */
+    Integer getId();
+
+    /** @return идентификатор объявления */
+    Integer getAdId();
+}
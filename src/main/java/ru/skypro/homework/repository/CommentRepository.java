@@ -1,9 +1,16 @@
 package ru.skypro.homework.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.skypro.homework.entity.AdEntity;
 import ru.skypro.homework.entity.CommentEntity;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -32,12 +39,123 @@ public interface CommentRepository extends JpaRepository<CommentEntity, Integer>
     List<CommentEntity> findByAd(AdEntity ad);
 
     /**
-     * Удаляет все комментарии, относящиеся к указанному объявлению.
+     * Возвращает первую страницу комментариев объявления, начиная с новых.
+     * Запросы постраничной выдачи используют индекс (ad_id, created_at, id),
+     * поэтому их время не зависит от количества комментариев, и загружают
+     * авторов тем же запросом, чтобы маппер не выполнял запрос на каждый комментарий.
+     * Условие курсора через {@code or} PostgreSQL не использует как границу индекса,
+     * поэтому запросы следующих страниц дополнительно ограничивают {@code createdAt}
+     * нестрогим неравенством: просмотр индекса начинается с курсора, а не с начала.
+     *
+     * @param adId     идентификатор объявления
+     * @param pageable размер страницы
+     * @return комментарии, упорядоченные по убыванию даты создания и идентификатора
+     */
+    @EntityGraph(attributePaths = "author")
+    @Query("select c from CommentEntity c where c.ad.id = :adId order by c.createdAt desc, c.id desc")
+    List<CommentEntity> findNewest(@Param("adId") Integer adId, Pageable pageable);
+
+    /**
+     * Возвращает страницу комментариев объявления, созданных раньше указанного.
+     *
+     * @param adId      идентификатор объявления
+     * @param createdAt дата создания последнего комментария предыдущей страницы
+     * @param id        идентификатор последнего комментария предыдущей страницы
+     * @param pageable  размер страницы
+     * @return комментарии, упорядоченные по убыванию даты создания и идентификатора
+     */
+    @EntityGraph(attributePaths = "author")
+    @Query("select c from CommentEntity c where c.ad.id = :adId " +
+            "and c.createdAt <= :createdAt " +
+            "and (c.createdAt < :createdAt or (c.createdAt = :createdAt and c.id < :id)) " +
+            "order by c.createdAt desc, c.id desc")
+    List<CommentEntity> findNewestBefore(@Param("adId") Integer adId,
+                                         @Param("createdAt") LocalDateTime createdAt,
+                                         @Param("id") Integer id,
+                                         Pageable pageable);
+
+    /**
+     * Возвращает первую страницу комментариев объявления, начиная со старых.
+     *
+     * @param adId     идентификатор объявления
+     * @param pageable размер страницы
+     * @return комментарии, упорядоченные по возрастанию даты создания и идентификатора
+     */
+    @EntityGraph(attributePaths = "author")
+    @Query("select c from CommentEntity c where c.ad.id = :adId order by c.createdAt asc, c.id asc")
+    List<CommentEntity> findOldest(@Param("adId") Integer adId, Pageable pageable);
+
+    /**
+     * Возвращает страницу комментариев объявления, созданных позже указанного.
+     *
+     * @param adId      идентификатор объявления
+     * @param createdAt дата создания последнего комментария предыдущей страницы
+     * @param id        идентификатор последнего комментария предыдущей страницы
+     * @param pageable  размер страницы
+     * @return комментарии, упорядоченные по возрастанию даты создания и идентификатора
+     */
+    @EntityGraph(attributePaths = "author")
+    @Query("select c from CommentEntity c where c.ad.id = :adId " +
+            "and c.createdAt >= :createdAt " +
+            "and (c.createdAt > :createdAt or (c.createdAt = :createdAt and c.id > :id)) " +
+            "order by c.createdAt asc, c.id asc")
+    List<CommentEntity> findOldestAfter(@Param("adId") Integer adId,
+                                        @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") Integer id,
+                                        Pageable pageable);
+
+    /**
+     * Удаляет все комментарии, относящиеся к указанному объявлению, одним запросом
+     * на стороне базы данных, не загружая комментарии в контекст персистентности.
      *
      * @param ad сущность объявления, комментарии к которому необходимо удалить
+     * @return количество удаленных комментариев
      *
      * @see AdEntity
      * @see CommentEntity
      */
-    void deleteByAd(AdEntity ad);
-}
\ No newline at end of file
+    @Modifying
+    @Query("delete from CommentEntity c where c.ad = :ad")
+    int deleteByAd(@Param("ad") AdEntity ad);
+
+    /**
+     * Возвращает следующую пачку комментариев автора, упорядоченную по идентификатору.
+     *
+     * @param authorId идентификатор автора
+     * @param pageable размер пачки
+     * @return идентификаторы комментариев и их объявлений
+     */
+    @Query("select c.id as id, c.ad.id as adId from CommentEntity c where c.author.id = :authorId order by c.id")
+    List<CommentRef> findRefsByAuthor(@Param("authorId") Integer authorId, Pageable pageable);
+
+    /**
+     * Возвращает следующую пачку идентификаторов комментариев к указанным объявлениям.
+     *
+     * @param adIds    идентификаторы объявлений
+     * @param pageable размер пачки
+     * @return идентификаторы комментариев
+     */
+    @Query("select c.id from CommentEntity c where c.ad.id in :adIds order by c.id")
+    List<Integer> findIdsByAdIds(@Param("adIds") Collection<Integer> adIds, Pageable pageable);
+
+    /**
+     * Удаляет комментарии по идентификаторам одним запросом.
+     *
+     * @param ids идентификаторы комментариев
+     * @return количество удаленных комментариев
+     */
+    @Modifying
+    @Query("delete from CommentEntity c where c.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Удаляет комментарии к указанным объявлениям одним запросом.
+     * Рассчитан на небольшое число комментариев, оставшихся после удаления пачками.
+     *
+     * @param adIds идентификаторы объявлений
+     * @return количество удаленных комментариев
+     */
+    @Modifying
+    @Query("delete from CommentEntity c where c.ad.id in :adIds")
+    int deleteByAdIds(@Param("adIds") Collection<Integer> adIds);
+}
@@ -0,0 +1,18 @@
+package ru.skypro.homework.repository;
+
+/**
+ * Проекция для выборки идентификатора записи и пути к ее изображению
+ * без загрузки всей сущности.
+ * Используется в фоновых задачах, которые обходят изображения пачками.
+ *
+ * @author Репозиторий изображений
+ * @version 1.0
+ */
+public interface ImagePath {
+
+    /** @return идентификатор объявления или пользователя */
+    Integer getId();
+
+    /** @return путь к изображению относительно корня загрузок */
+    String getImage();
+}
@@ -1,8 +1,16 @@
 package ru.skypro.homework.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import ru.skypro.homework.entity.UserEntity;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -20,6 +28,7 @@ public interface UserRepository extends JpaRepository<UserEntity, Integer> {
 
     /**
      * Находит пользователя по его email адресу.
+     * Результат кэшируется и сбрасывается при любом изменении таблицы users.
      *
      * @param email email адрес пользователя для поиска
      * @return Optional, содержащий пользователя, если найден, или пустой Optional
@@ -27,8 +36,30 @@ public interface UserRepository extends JpaRepository<UserEntity, Integer> {
      * @see UserEntity
      * @see Optional
      */
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     Optional<UserEntity> findByEmail(String email);
 
+    /**
+     * Находит пользователя по email без учета регистра.
+     * Результат кэшируется, как и у {@link #findByEmail(String)}.
+     *
+     * @param email email адрес, приведенный к нижнему регистру
+     * @return Optional, содержащий пользователя, если найден, или пустой Optional
+     *
+     * @see ru.skypro.homework.service.impl.UserLookupCache
+     */
+    @Query("select u from UserEntity u where lower(u.email) = :email")
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
+    Optional<UserEntity> findByNormalizedEmail(@Param("email") String email);
+
+    /**
+     * Находит пользователей по набору email адресов одним запросом.
+     *
+     * @param emails email адреса пользователей
+     * @return найденные пользователи
+     */
+    List<UserEntity> findByEmailIn(Collection<String> emails);
+
     /**
      * Проверяет существование пользователя с указанным email адресом.
      *
@@ -38,4 +69,62 @@ public interface UserRepository extends JpaRepository<UserEntity, Integer> {
      * @see UserEntity
      */
     boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+    /**
+     * Возвращает следующую пачку путей к изображениям пользователей, упорядоченную по идентификатору.
+     * Используется для постраничного обхода по ключу (keyset) без OFFSET.
+     *
+     * @param afterId  идентификатор, после которого начинается пачка
+     * @param pageable размер пачки
+     * @return идентификаторы и пути к изображениям
+     */
+    @Query("select e.id as id, e.image as image from UserEntity e " +
+            "where e.id > :afterId and e.image is not null order by e.id")
+    List<ImagePath> findImagePathsAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Заменяет путь к изображению, только если он не изменился с момента чтения.
+     * Позволяет фоновым задачам не затирать изображение, загруженное одновременно с ними.
+     *
+     * @param id       идентификатор записи
+     * @param oldImage ожидаемый текущий путь
+     * @param newImage новый путь
+     * @return количество обновленных строк (0 или 1)
+     */
+    @Modifying
+    @Query("update UserEntity e set e.image = :newImage where e.id = :id and e.image = :oldImage")
+    int replaceImage(@Param("id") Integer id,
+                     @Param("oldImage") String oldImage,
+                     @Param("newImage") String newImage);
+
+    /**
+     * Возвращает те из переданных путей к изображениям, на которые ссылаются записи.
+     *
+     * @param images проверяемые пути
+     * @return пути, которые используются
+     */
+    @Query("select e.image from UserEntity e where e.image in :images")
+    List<String> findExistingImages(@Param("images") Collection<String> images);
+
+    /**
+     * Заменяет хэш пароля пользователя.
+     *
+     * @param id       идентификатор пользователя
+     * @param password новый хэш пароля
+     * @return количество обновленных строк (0 или 1)
+     */
+    @Modifying
+    @Query("update UserEntity u set u.password = :password where u.id = :id")
+    int replacePassword(@Param("id") Integer id, @Param("password") String password);
+
+    /**
+     * Удаляет пользователя одним запросом, без каскадной обработки связей в Hibernate.
+     * Объявления и комментарии пользователя должны быть удалены до вызова.
+     *
+     * @param id идентификатор пользователя
+     * @return количество удаленных строк (0 или 1)
+     */
+    @Modifying
+    @Query("delete from UserEntity u where u.id = :id")
+    int deleteUserById(@Param("id") Integer id);
+}
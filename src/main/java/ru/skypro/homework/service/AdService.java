@@ -4,13 +4,15 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.dto.*;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface AdService {
     Ads getAllAds();
-    Ad addAd(CreateOrUpdateAd properties, MultipartFile image, Authentication authentication);
+    CompletableFuture<Ad> addAd(CreateOrUpdateAd properties, MultipartFile image, Authentication authentication);
     ExtendedAd getAd(Integer id);
     void deleteAd(Integer id, Authentication authentication);
     Ad updateAd(Integer id, CreateOrUpdateAd updateAd, Authentication authentication);
     Ads getMyAds(Authentication authentication);
-    void updateAdImage(Integer id, MultipartFile image, Authentication authentication);
-    byte[] getAdImage(Integer id);
+    CompletableFuture<Void> updateAdImage(Integer id, MultipartFile image, Authentication authentication);
+    CompletableFuture<byte[]> getAdImage(Integer id);
 }
\ No newline at end of file
@@ -1,13 +1,17 @@
 package ru.skypro.homework.service;
 
 import org.springframework.security.core.Authentication;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.skypro.homework.dto.Comment;
 import ru.skypro.homework.dto.Comments;
 import ru.skypro.homework.dto.CreateOrUpdateComment;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface CommentService {
-    Comments getComments(Integer adId);
-    Comment addComment(Integer adId, CreateOrUpdateComment comment, Authentication authentication);
+    Comments getComments(Integer adId, int limit, String order, String cursor);
+    CompletableFuture<Comment> addComment(Integer adId, CreateOrUpdateComment comment, Authentication authentication);
     void deleteComment(Integer adId, Integer commentId, Authentication authentication);
     Comment updateComment(Integer adId, Integer commentId, CreateOrUpdateComment comment, Authentication authentication);
+    SseEmitter streamComments(Integer adId);
 }
\ No newline at end of file
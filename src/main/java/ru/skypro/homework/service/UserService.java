@@ -5,9 +5,12 @@ import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.dto.NewPassword;
 import ru.skypro.homework.dto.UpdateUser;
 import ru.skypro.homework.dto.User;
+import ru.skypro.homework.dto.UserDeletion;
+import ru.skypro.homework.dto.UserProfile;
 import ru.skypro.homework.entity.UserEntity;
 
-import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface UserService {
 
@@ -37,21 +40,50 @@ public interface UserService {
     void updatePassword(NewPassword newPassword, Authentication authentication);
 
     /**
-     * Обновление аватара пользователя
+     * Обновление аватара пользователя.
+     * Файл сохраняется в пуле потоков ввода-вывода.
      *
      * @param image файл изображения
      * @param authentication объект аутентификации
-     * @throws IOException при ошибке работы с файлом
+     * @return результат обновления; при ошибке работы с файлом завершается
+     *         исключением с {@link java.io.IOException} в качестве причины
      */
-    void updateUserImage(MultipartFile image, Authentication authentication) throws IOException;
+    CompletableFuture<Void> updateUserImage(MultipartFile image, Authentication authentication);
 
     /**
-     * Получение изображения пользователя по ID
+     * Получение изображения пользователя по ID.
+     * Файл читается в пуле потоков ввода-вывода.
      *
      * @param userId ID пользователя
      * @return массив байтов изображения
      */
-    byte[] getUserImage(Integer userId);
+    CompletableFuture<byte[]> getUserImage(Integer userId);
+
+    /**
+     * Запуск фонового удаления пользователя вместе с его объявлениями и комментариями.
+     * Доступно только администратору.
+     *
+     * @param userId ID удаляемого пользователя
+     * @param authentication объект аутентификации администратора
+     * @return состояние задачи удаления
+     */
+    UserDeletion deleteUser(Integer userId, Authentication authentication);
+
+    /**
+     * Получение хода фонового удаления пользователя.
+     *
+     * @param jobId ID задачи удаления
+     * @return состояние задачи удаления
+     */
+    UserDeletion getUserDeletion(String jobId);
+    /**
+     * Получение публичных профилей пользователей по списку ID
+     *
+     * @param ids ID пользователей
+     * @return профили найденных пользователей в порядке запроса
+     */
+    List<UserProfile> getUserProfiles(List<Integer> ids);
+
     public boolean userExists(String email);
     public UserEntity getUserByEmail(String email);
 }
\ No newline at end of file
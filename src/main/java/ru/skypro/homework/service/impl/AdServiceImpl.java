@@ -2,30 +2,41 @@ package ru.skypro.homework.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.dto.*;
 import ru.skypro.homework.entity.AdEntity;
-import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.event.ImageDeletionEvent;
 import ru.skypro.homework.exception.BadRequestException;
 import ru.skypro.homework.exception.ForbiddenException;
 import ru.skypro.homework.exception.NotFoundException;
 import ru.skypro.homework.mapper.AdMapper;
 import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.CommentRepository;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.service.AdService;
 import ru.skypro.homework.service.impl.FileService;
+import ru.skypro.homework.validation.InputValidator;
 
-import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Сервис для работы с объявлениями.
  * Реализует бизнес-логику управления объявлениями, включая создание,
  * получение, обновление и удаление объявлений, а также работу с изображениями.
+ * Методы с изображениями выполняются вне транзакции: файл читается и пишется
+ * в пуле потоков ввода-вывода без занятого соединения с базой данных,
+ * а изменения в базе вносятся короткими транзакциями до и после работы с файлом.
  *
  * @author Система управления объявлениями
  * @version 1.0
@@ -38,8 +49,13 @@ public class AdServiceImpl implements AdService {
 
     private final AdRepository adRepository;
     private final UserRepository userRepository;
+    private final CommentRepository commentRepository;
     private final AdMapper adMapper;
     private final FileService fileService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MissingImageCache missingImages;
+    private final UserLookupCache userLookupCache;
 
     /**
      * Получает список всех объявлений.
@@ -48,6 +64,7 @@ public class AdServiceImpl implements AdService {
      * @return {@link Ads} объект с количеством и списком объявлений
      */
     @Override
+    @Transactional(readOnly = true)
     public Ads getAllAds() {
         log.debug("Получение всех объявлений");
 
@@ -60,7 +77,7 @@ public class AdServiceImpl implements AdService {
         result.setCount(ads.size());
         result.setResults(ads);
 
-        log.info("Получены все объявления, количество: {}", ads.size());
+        log.debug("Получены все объявления, количество: {}", ads.size());
         return result;
     }
 
@@ -71,58 +88,42 @@ public class AdServiceImpl implements AdService {
      * @param properties   данные для создания объявления
      * @param image        файл изображения объявления
      * @param authentication объект аутентификации текущего пользователя
-     * @return {@link Ad} DTO созданного объявления
+     * @return {@link Ad} DTO созданного объявления, когда изображение сохранено
      * @throws NotFoundException   если пользователь не найден
      * @throws BadRequestException если изображение не предоставлено или произошла ошибка при сохранении
      */
     @Override
-    public Ad addAd(CreateOrUpdateAd properties, MultipartFile image, Authentication authentication) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Ad> addAd(CreateOrUpdateAd properties, MultipartFile image, Authentication authentication) {
         log.debug("Создание нового объявления пользователем: {}", authentication.getName());
 
-        // Валидация входных данных
-        if (properties.getPrice() < 0) {
-            throw new BadRequestException("Цена не может быть отрицательной");
-        }
-
-        if (properties.getTitle() == null || properties.getTitle().trim().isEmpty()) {
-            throw new BadRequestException("Заголовок не может быть пустым");
-        }
+        InputValidator.validateNewAd(properties);
 
-        if (properties.getTitle().length() < 4 || properties.getTitle().length() > 32) {
-            throw new BadRequestException("Заголовок должен быть от 4 до 32 символов");
+        if (image == null || image.isEmpty()) {
+            throw new BadRequestException("Изображение объявления обязательно");
         }
 
-        if (properties.getDescription() == null || properties.getDescription().trim().isEmpty()) {
-            throw new BadRequestException("Описание не может быть пустым");
-        }
+        UserSnapshot author = userLookupCache.get(authentication.getName());
 
-        if (properties.getDescription().length() < 8 || properties.getDescription().length() > 64) {
-            throw new BadRequestException("Описание должно быть от 8 до 64 символов");
-        }
+        // Сохраняем изображение вне транзакции, в пуле потоков ввода-вывода
+        return fileService.saveImageAsync(image, "ads")
+                .exceptionally(e -> {
+                    throw saveFailure(e);
+                })
+                .thenApply(imagePath -> inTransaction(imagePath, () -> {
+            // Если объявление не сохранится, файл будет удален
+            eventPublisher.publishEvent(ImageDeletionEvent.afterRollback(imagePath));
 
-        UserEntity author = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
-
-        AdEntity adEntity = adMapper.toEntity(properties);
-        adEntity.setAuthor(author);
-
-        // Сохраняем изображение
-        if (image != null && !image.isEmpty()) {
-            try {
-                String imagePath = fileService.saveImage(image, "ads");
-                adEntity.setImage(imagePath);
-            } catch (IOException e) {
-                throw new BadRequestException("Ошибка при сохранении изображения: " + e.getMessage());
-            }
-        } else {
-            throw new BadRequestException("Изображение объявления обязательно");
-        }
+            AdEntity adEntity = adMapper.toEntity(properties);
+            adEntity.setAuthor(userRepository.getReferenceById(author.getId()));
+            adEntity.setImage(imagePath);
 
-        AdEntity savedAd = adRepository.save(adEntity);
-        log.info("Добавлено новое объявление ID: {}, автор: {}, заголовок: {}",
-                savedAd.getId(), author.getEmail(), savedAd.getTitle());
+            AdEntity savedAd = adRepository.save(adEntity);
+            log.info("Добавлено новое объявление ID: {}, автор: {}, заголовок: {}",
+                    savedAd.getId(), author.getEmail(), savedAd.getTitle());
 
-        return adMapper.toDto(savedAd);
+            return adMapper.toDto(savedAd);
+        }));
     }
 
     /**
@@ -134,20 +135,22 @@ public class AdServiceImpl implements AdService {
      * @throws NotFoundException если объявление с указанным ID не найдено
      */
     @Override
+    @Transactional(readOnly = true)
     public ExtendedAd getAd(Integer id) {
         log.debug("Получение объявления ID: {}", id);
 
         AdEntity adEntity = adRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + id));
 
-        log.info("Получено объявление ID: {}, заголовок: {}", id, adEntity.getTitle());
+        log.debug("Получено объявление ID: {}, заголовок: {}", id, adEntity.getTitle());
         return adMapper.toExtendedAd(adEntity);
     }
 
     /**
      * Удаляет объявление по его идентификатору.
      * Проверяет права доступа: только автор или администратор может удалить объявление.
-     * Удаляет связанное изображение из файловой системы.
+     * Связанное изображение удаляется в фоне после фиксации транзакции.
+     * Комментарии удаляются одним запросом независимо от их количества.
      *
      * @param id              идентификатор объявления
      * @param authentication объект аутентификации текущего пользователя
@@ -161,26 +164,23 @@ public class AdServiceImpl implements AdService {
         AdEntity adEntity = adRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + id));
 
-        UserEntity currentUser = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
+        UserSnapshot currentUser = userLookupCache.get(authentication.getName());
 
         // Проверяем права
         if (!adEntity.getAuthor().getId().equals(currentUser.getId()) &&
-                !currentUser.getRole().equals(Role.ADMIN)) {
+                !currentUser.isAdmin()) {
             throw new ForbiddenException("Нет прав на удаление объявления. Только автор или администратор могут удалить объявление.");
         }
 
-        // Удаляем изображение
+        // Изображение удаляется в фоне после фиксации транзакции
         if (adEntity.getImage() != null) {
-            try {
-                fileService.deleteImage(adEntity.getImage());
-            } catch (IOException e) {
-                log.error("Ошибка при удалении изображения объявления {}: {}", id, e.getMessage());
-            }
+            eventPublisher.publishEvent(ImageDeletionEvent.afterCommit(adEntity.getImage()));
         }
 
-        adRepository.delete(adEntity);
-        log.info("Удалено объявление ID: {}, заголовок: {}", id, adEntity.getTitle());
+        // Комментарии и объявление удаляются двумя запросами, без загрузки комментариев
+        int comments = commentRepository.deleteByAd(adEntity);
+        adRepository.deleteAdById(id);
+        log.info("Удалено объявление ID: {}, заголовок: {}, комментариев: {}", id, adEntity.getTitle(), comments);
     }
 
     /**
@@ -198,36 +198,16 @@ public class AdServiceImpl implements AdService {
     public Ad updateAd(Integer id, CreateOrUpdateAd updateAd, Authentication authentication) {
         log.debug("Обновление объявления ID: {}", id);
 
-        // Валидация входных данных
-        if (updateAd.getPrice() != null && updateAd.getPrice() < 0) {
-            throw new BadRequestException("Цена не может быть отрицательной");
-        }
-
-        if (updateAd.getTitle() != null && updateAd.getTitle().trim().isEmpty()) {
-            throw new BadRequestException("Заголовок не может быть пустым");
-        }
-
-        if (updateAd.getTitle() != null && (updateAd.getTitle().length() < 4 || updateAd.getTitle().length() > 32)) {
-            throw new BadRequestException("Заголовок должен быть от 4 до 32 символов");
-        }
-
-        if (updateAd.getDescription() != null && updateAd.getDescription().trim().isEmpty()) {
-            throw new BadRequestException("Описание не может быть пустым");
-        }
-
-        if (updateAd.getDescription() != null && (updateAd.getDescription().length() < 8 || updateAd.getDescription().length() > 64)) {
-            throw new BadRequestException("Описание должно быть от 8 до 64 символов");
-        }
+        InputValidator.validateAdUpdate(updateAd);
 
         AdEntity adEntity = adRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + id));
 
-        UserEntity currentUser = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
+        UserSnapshot currentUser = userLookupCache.get(authentication.getName());
 
         // Проверяем права
         if (!adEntity.getAuthor().getId().equals(currentUser.getId()) &&
-                !currentUser.getRole().equals(Role.ADMIN)) {
+                !currentUser.isAdmin()) {
             throw new ForbiddenException("Нет прав на редактирование объявления. Только автор или администратор могут редактировать объявление.");
         }
 
@@ -247,13 +227,13 @@ public class AdServiceImpl implements AdService {
      * @throws NotFoundException если пользователь не найден
      */
     @Override
+    @Transactional(readOnly = true)
     public Ads getMyAds(Authentication authentication) {
         log.debug("Получение объявлений пользователя: {}", authentication.getName());
 
-        UserEntity currentUser = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
+        UserSnapshot currentUser = userLookupCache.get(authentication.getName());
 
-        List<AdEntity> adEntities = adRepository.findByAuthor(currentUser);
+        List<AdEntity> adEntities = adRepository.findByAuthor(userRepository.getReferenceById(currentUser.getId()));
         List<Ad> ads = adEntities.stream()
                 .map(adMapper::toDto)
                 .collect(Collectors.toList());
@@ -262,13 +242,13 @@ public class AdServiceImpl implements AdService {
         result.setCount(ads.size());
         result.setResults(ads);
 
-        log.info("Получены объявления пользователя {}, количество: {}", currentUser.getEmail(), ads.size());
+        log.debug("Получены объявления пользователя {}, количество: {}", currentUser.getEmail(), ads.size());
         return result;
     }
 
     /**
      * Обновляет изображение объявления.
-     * Удаляет старое изображение и сохраняет новое в файловой системе.
+     * Сохраняет новое изображение, а старое удаляет в фоне после фиксации транзакции.
      *
      * @param id              идентификатор объявления
      * @param image           новый файл изображения
@@ -278,85 +258,96 @@ public class AdServiceImpl implements AdService {
      * @throws ForbiddenException  если у пользователя нет прав на редактирование
      */
     @Override
-    public void updateAdImage(Integer id, MultipartFile image, Authentication authentication) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Void> updateAdImage(Integer id, MultipartFile image, Authentication authentication) {
         log.debug("Обновление изображения объявления ID: {}", id);
 
-        AdEntity adEntity = adRepository.findById(id)
-                .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + id));
-
-        UserEntity currentUser = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
-
-        // Проверяем права
-        if (!adEntity.getAuthor().getId().equals(currentUser.getId()) &&
-                !currentUser.getRole().equals(Role.ADMIN)) {
-            throw new ForbiddenException("Нет прав на редактирование объявления. Только автор или администратор могут обновить изображение.");
-        }
+        // Проверяем права до записи файла, чтобы не сохранять чужие загрузки
+        transactionTemplate.executeWithoutResult(status -> checkImageAccess(id, authentication));
 
         if (image == null || image.isEmpty()) {
             throw new BadRequestException("Файл изображения отсутствует или пуст");
         }
 
-        // Проверяем тип файла
-        String contentType = image.getContentType();
-        if (contentType == null ||
-                (!contentType.equals("image/jpeg") && !contentType.equals("image/png") &&
-                        !contentType.equals("image/jpg"))) {
-            throw new BadRequestException("Разрешены только изображения в формате JPEG, JPG или PNG");
-        }
+        // Тип файла проверяется в FileService по сигнатуре содержимого,
+        // заголовку Content-Type от клиента не доверяем
 
         // Проверяем размер файла (10MB)
         if (image.getSize() > 10 * 1024 * 1024) {
             throw new BadRequestException("Размер файла не должен превышать 10MB");
         }
 
-        // Удаляем старое изображение
-        if (adEntity.getImage() != null) {
-            try {
-                fileService.deleteImage(adEntity.getImage());
-            } catch (IOException e) {
-                log.error("Ошибка при удалении старого изображения: {}", e.getMessage());
-            }
-        }
-
-        // Сохраняем новое изображение
-        try {
-            String imagePath = fileService.saveImage(image, "ads");
-            adEntity.setImage(imagePath);
-            adRepository.save(adEntity);
-            log.info("Обновлено изображение объявления ID: {}", id);
-        } catch (IOException e) {
-            throw new BadRequestException("Ошибка при сохранении изображения: " + e.getMessage());
-        }
+        // Сохраняем новое изображение вне транзакции, в пуле потоков ввода-вывода
+        return fileService.saveImageAsync(image, "ads")
+                .exceptionally(e -> {
+                    throw saveFailure(e);
+                })
+                .thenAccept(imagePath -> {
+                    inTransaction(imagePath, () -> {
+                        eventPublisher.publishEvent(ImageDeletionEvent.afterRollback(imagePath));
+
+                        // Права проверяются повторно: объявление могло измениться, пока писался файл
+                        AdEntity adEntity = checkImageAccess(id, authentication);
+                        String oldImagePath = adEntity.getImage();
+                        adEntity.setImage(imagePath);
+                        adRepository.save(adEntity);
+
+                        // Старое изображение удаляется в фоне после фиксации транзакции
+                        if (oldImagePath != null) {
+                            eventPublisher.publishEvent(ImageDeletionEvent.afterCommit(oldImagePath));
+                        }
+                        return null;
+                    });
+                    // Сбрасываем отрицательный результат только после фиксации
+                    missingImages.invalidate("ads", id);
+                    log.info("Обновлено изображение объявления ID: {}", id);
+                });
     }
 
     /**
      * Получает изображение объявления в виде массива байтов.
+     * Путь к файлу читается короткой транзакцией, сам файл читается вне ее
+     * в пуле потоков ввода-вывода.
+     * Отсутствие изображения на короткое время запоминается в {@link MissingImageCache}.
      *
      * @param id идентификатор объявления
      * @return массив байтов изображения или пустой массив, если изображение не найдено
      * @throws NotFoundException если объявление не найдено
      */
     @Override
-    public byte[] getAdImage(Integer id) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<byte[]> getAdImage(Integer id) {
         log.debug("Получение изображения объявления ID: {}", id);
 
-        AdEntity adEntity = adRepository.findById(id)
-                .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + id));
+        if (missingImages.isMissing("ads", id)) {
+            return CompletableFuture.completedFuture(new byte[0]);
+        }
+        long generation = missingImages.generation("ads", id);
 
-        if (adEntity.getImage() == null || adEntity.getImage().isEmpty()) {
+        String imagePath = adRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + id))
+                .getImage();
+
+        if (imagePath == null || imagePath.isEmpty()) {
             log.warn("Изображение для объявления {} не найдено", id);
-            return new byte[0];
+            missingImages.markMissing("ads", id, generation);
+            return CompletableFuture.completedFuture(new byte[0]);
         }
 
-        try {
-            byte[] imageData = fileService.loadImage(adEntity.getImage());
-            log.info("Получено изображение объявления ID: {}, размер: {} байт", id, imageData.length);
-            return imageData;
-        } catch (IOException e) {
-            log.error("Ошибка при чтении изображения объявления {}: {}", id, e.getMessage());
-            return new byte[0];
-        }
+        return fileService.loadImageAsync(imagePath)
+                .thenApply(imageData -> {
+                    log.debug("Получено изображение объявления ID: {}, размер: {} байт", id, imageData.length);
+                    return imageData;
+                })
+                .exceptionally(e -> {
+                    Throwable cause = FileService.unwrap(e);
+                    // Кэшируем только отсутствие файла, а не временные ошибки чтения
+                    if (cause instanceof NoSuchFileException) {
+                        missingImages.markMissing("ads", id, generation);
+                    }
+                    log.error("Ошибка при чтении изображения объявления {}: {}", id, cause.getMessage());
+                    return new byte[0];
+                });
     }
 
     /**
@@ -367,6 +358,7 @@ public class AdServiceImpl implements AdService {
      * @param authentication объект аутентификации текущего пользователя
      * @return true если пользователь является автором объявления, false в противном случае
      */
+    @Transactional(readOnly = true)
     public boolean isAdAuthor(Integer adId, Authentication authentication) {
         log.debug("Проверка прав авторства для объявления ID: {}", adId);
 
@@ -374,8 +366,7 @@ public class AdServiceImpl implements AdService {
             AdEntity adEntity = adRepository.findById(adId)
                     .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + adId));
 
-            UserEntity currentUser = userRepository.findByEmail(authentication.getName())
-                    .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
+            UserSnapshot currentUser = userLookupCache.get(authentication.getName());
 
             boolean isAuthor = adEntity.getAuthor().getId().equals(currentUser.getId());
             log.debug("Пользователь {} является автором объявления ID: {}: {}",
@@ -387,4 +378,49 @@ public class AdServiceImpl implements AdService {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Загружает объявление и проверяет, что текущий пользователь может менять его изображение.
+     * Вызывается внутри транзакции.
+     */
+    private AdEntity checkImageAccess(Integer id, Authentication authentication) {
+        AdEntity adEntity = adRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + id));
+
+        UserSnapshot currentUser = userLookupCache.get(authentication.getName());
+
+        if (!adEntity.getAuthor().getId().equals(currentUser.getId()) &&
+                !currentUser.isAdmin()) {
+            throw new ForbiddenException("Нет прав на редактирование объявления. Только автор или администратор могут обновить изображение.");
+        }
+        return adEntity;
+    }
+
+    /**
+     * Преобразует ошибку сохранения изображения в ответ 400; ошибки проверки
+     * содержимого передаются как есть.
+     */
+    private static RuntimeException saveFailure(Throwable e) {
+        Throwable cause = FileService.unwrap(e);
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new BadRequestException("Ошибка при сохранении изображения: " + cause.getMessage());
+    }
+
+    /**
+     * Выполняет короткую транзакцию, которая ссылается на только что сохраненный файл.
+     * Если транзакция откатилась, файл удаляется по событию отката, опубликованному в ней.
+     * Если транзакцию не удалось даже начать, файл сразу ставится в очередь на удаление.
+     * Ошибки после фиксации файл не трогают: на него уже ссылается запись.
+     */
+    private <T> T inTransaction(String imagePath, Supplier<T> action) {
+        try {
+            return transactionTemplate.execute(status -> action.get());
+        } catch (CannotCreateTransactionException e) {
+            // Вне транзакции событие обрабатывается сразу
+            eventPublisher.publishEvent(ImageDeletionEvent.afterCommit(imagePath));
+            throw e;
+        }
+    }
+}
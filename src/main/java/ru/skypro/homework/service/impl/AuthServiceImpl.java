@@ -2,12 +2,14 @@ package ru.skypro.homework.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.skypro.homework.dto.Register;
 import ru.skypro.homework.dto.Role;
 import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.event.UserChangedEvent;
 import ru.skypro.homework.mapper.UserMapper;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.service.AuthService;
@@ -28,6 +30,8 @@ public class AuthServiceImpl implements AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final UserMapper userMapper;
+    private final UserLookupCache userLookupCache;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Выполняет аутентификацию пользователя.
@@ -39,7 +43,7 @@ public class AuthServiceImpl implements AuthService {
      */
     @Override
     public boolean login(String userName, String password) {
-        return userRepository.findByEmail(userName)
+        return userLookupCache.find(userName)
                 .map(user -> {
                     boolean matches = passwordEncoder.matches(password, user.getPassword());
                     log.info("Попытка входа пользователя {}: {}", userName, matches ? "успешно" : "неудачно");
@@ -50,7 +54,7 @@ public class AuthServiceImpl implements AuthService {
 
     /**
      * Регистрирует нового пользователя в системе.
-     * Проверяет уникальность email, кодирует пароль и сохраняет пользователя в БД.
+     * Проверяет уникальность email без учета регистра, кодирует пароль и сохраняет пользователя в БД.
      * Устанавливает роль USER по умолчанию, если роль не указана.
      *
      * @param register DTO с данными для регистрации пользователя
@@ -58,7 +62,7 @@ public class AuthServiceImpl implements AuthService {
      */
     @Override
     public boolean register(Register register) {
-        if (userRepository.existsByEmail(register.getUsername())) {
+        if (userLookupCache.find(register.getUsername()).isPresent()) {
             log.warn("Попытка регистрации существующего пользователя: {}", register.getUsername());
             return false;
         }
@@ -75,7 +79,8 @@ public class AuthServiceImpl implements AuthService {
                 userEntity.setRole(Role.USER);
             }
 
-            userRepository.save(userEntity);
+            UserEntity savedEntity = userRepository.save(userEntity);
+            eventPublisher.publishEvent(new UserChangedEvent(savedEntity.getId(), savedEntity.getEmail()));
             log.info("Пользователь успешно зарегистрирован: {}", register.getUsername());
             return true;
 
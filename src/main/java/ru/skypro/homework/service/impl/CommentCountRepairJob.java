@@ -0,0 +1,76 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.repository.AdRepository;
+
+/**
+ * Фоновая сверка счетчиков комментариев ({@code ads.comment_count}) с таблицей comments.
+ *
+ * <p>Счетчик поддерживается атомарными UPDATE в {@link CommentServiceImpl}, но может
+ * разойтись с данными после удаления комментариев в обход сервиса (каскадное удаление
+ * пользователя, ручные правки в базе). Объявления обходятся диапазонами идентификаторов,
+ * каждый диапазон блокируется и пересчитывается одним UPDATE в короткой транзакции,
+ * поэтому блокировки строк не держатся долго. Обновляются только разошедшиеся строки.</p>
+ *
+ * @author Сервис комментариев
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CommentCountRepairJob {
+
+    private final AdRepository adRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.comments.count-repair.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.comments.count-repair.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * Запускает сверку по расписанию, если она включена.
+     */
+    @Scheduled(initialDelayString = "${app.comments.count-repair.initial-delay-ms:300000}",
+            fixedDelayString = "${app.comments.count-repair.interval-ms:86400000}")
+    public void scheduledRepair() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            repair();
+        } catch (RuntimeException e) {
+            log.error("Сверка счетчиков комментариев прервана: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Пересчитывает счетчики комментариев всех объявлений.
+     *
+     * @return количество исправленных объявлений
+     */
+    public synchronized long repair() {
+        int maxId = adRepository.findMaxId().orElse(0);
+        long repaired = 0;
+        for (int fromId = 0; fromId < maxId; fromId += batchSize) {
+            int from = fromId;
+            int to = Math.min(fromId + batchSize, maxId);
+            Integer updated = transactionTemplate.execute(status -> {
+                adRepository.lockIdRange(from, to);
+                return adRepository.repairCommentCounts(from, to);
+            });
+            if (updated != null && updated > 0) {
+                log.warn("Исправлены счетчики комментариев в {} объявлениях (ID {}..{})", updated, from + 1, to);
+                repaired += updated;
+            }
+        }
+        log.info("Сверка счетчиков комментариев завершена, исправлено объявлений: {}", repaired);
+        return repaired;
+    }
+}
@@ -2,16 +2,21 @@ package ru.skypro.homework.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.skypro.homework.dto.Comment;
 import ru.skypro.homework.dto.Comments;
 import ru.skypro.homework.dto.CreateOrUpdateComment;
-import ru.skypro.homework.dto.Role;
+import ru.skypro.homework.dto.UserSnapshot;
 import ru.skypro.homework.entity.AdEntity;
 import ru.skypro.homework.entity.CommentEntity;
-import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.event.CommentChangedEvent;
 import ru.skypro.homework.exception.BadRequestException;
 import ru.skypro.homework.exception.ForbiddenException;
 import ru.skypro.homework.exception.NotFoundException;
@@ -20,8 +25,15 @@ import ru.skypro.homework.repository.AdRepository;
 import ru.skypro.homework.repository.CommentRepository;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.service.CommentService;
+import ru.skypro.homework.validation.InputValidator;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -42,71 +54,137 @@ public class CommentServiceImpl implements CommentService {
     private final AdRepository adRepository;
     private final UserRepository userRepository;
     private final CommentMapper commentMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CommentStreamHub commentStreamHub;
+    private final TransactionTemplate transactionTemplate;
+    private final UserLookupCache userLookupCache;
+
+    /** Отложенная пакетная запись комментариев, если включена */
+    private final Optional<CommentWriteBehindQueue> writeBehind;
+
+    /** Максимальный размер страницы комментариев */
+    private static final int MAX_PAGE_SIZE = 100;
 
     /**
-     * Получает все комментарии для указанного объявления.
+     * Получает страницу комментариев для указанного объявления.
+     * Страницы выбираются по ключу (дата создания, идентификатор) с помощью индекса,
+     * без OFFSET, поэтому время ответа не зависит от количества комментариев.
+     * Курсор кодирует ключ последнего комментария страницы.
+     * Выполняется ровно два запроса: количество комментариев с проверкой существования
+     * объявления и страница комментариев вместе с авторами.
      *
-     * @param adId идентификатор объявления
-     * @return {@link Comments} объект с количеством и списком комментариев
-     * @throws NotFoundException если объявление не найдено
+     * @param adId   идентификатор объявления
+     * @param limit  размер страницы (от 1 до 100)
+     * @param order  порядок: desc - сначала новые, asc - сначала старые
+     * @param cursor курсор из поля next предыдущей страницы или null для первой страницы
+     * @return {@link Comments} объект с общим количеством комментариев, страницей и курсором следующей страницы
+     * @throws NotFoundException   если объявление не найдено
+     * @throws BadRequestException если параметры страницы некорректны
      */
     @Override
-    public Comments getComments(Integer adId) {
-        log.debug("Получение комментариев для объявления ID: {}", adId);
+    @Transactional(readOnly = true)
+    public Comments getComments(Integer adId, int limit, String order, String cursor) {
+        log.debug("Получение комментариев для объявления ID: {}, limit: {}, order: {}", adId, limit, order);
 
-        AdEntity adEntity = adRepository.findById(adId)
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        boolean newestFirst;
+        if ("desc".equalsIgnoreCase(order)) {
+            newestFirst = true;
+        } else if ("asc".equalsIgnoreCase(order)) {
+            newestFirst = false;
+        } else {
+            throw new BadRequestException("Порядок должен быть asc или desc");
+        }
+
+        // Счетчик хранится в объявлении, поэтому общее число не требует COUNT(*) по comments
+        int total = adRepository.findCommentCount(adId)
                 .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + adId));
 
-        List<CommentEntity> commentEntities = commentRepository.findByAd(adEntity);
+        // Запрашиваем на один комментарий больше, чтобы узнать, есть ли следующая страница
+        PageRequest page = PageRequest.of(0, limit + 1);
+        List<CommentEntity> commentEntities;
+        if (cursor == null || cursor.isEmpty()) {
+            commentEntities = newestFirst
+                    ? commentRepository.findNewest(adId, page)
+                    : commentRepository.findOldest(adId, page);
+        } else {
+            CommentEntity after = decodeCursor(cursor);
+            commentEntities = newestFirst
+                    ? commentRepository.findNewestBefore(adId, after.getCreatedAt(), after.getId(), page)
+                    : commentRepository.findOldestAfter(adId, after.getCreatedAt(), after.getId(), page);
+        }
+
+        String next = null;
+        if (commentEntities.size() > limit) {
+            commentEntities = commentEntities.subList(0, limit);
+            next = encodeCursor(commentEntities.get(limit - 1));
+        }
+
         List<Comment> comments = commentEntities.stream()
                 .map(commentMapper::toDto)
                 .collect(Collectors.toList());
 
         Comments result = new Comments();
-        result.setCount(comments.size());
+        result.setCount(total);
         result.setResults(comments);
+        result.setNext(next);
 
-        log.info("Получено {} комментариев для объявления ID: {}", comments.size(), adId);
+        log.debug("Получено {} комментариев для объявления ID: {}", comments.size(), adId);
         return result;
     }
 
     /**
      * Добавляет новый комментарий к объявлению.
      * Автоматически устанавливает текущего пользователя как автора комментария.
+     * Если включена отложенная запись ({@code app.comments.write-behind.enabled}),
+     * комментарий ставится в очередь и сохраняется пачкой вместе с другими,
+     * иначе сохраняется сразу в отдельной транзакции.
      *
      * @param adId         идентификатор объявления
      * @param comment      DTO с текстом комментария
      * @param authentication объект аутентификации текущего пользователя
-     * @return {@link Comment} DTO созданного комментария
-     * @throws NotFoundException если объявление или пользователь не найдены
+     * @return будущий {@link Comment} DTO созданного комментария; завершается после фиксации
+     *         или с {@link NotFoundException}, если объявление или пользователь не найдены
      * @throws BadRequestException если текст комментария не прошел валидацию
+     * @throws java.util.concurrent.RejectedExecutionException если очередь отложенной записи заполнена
      */
     @Override
-    public Comment addComment(Integer adId, CreateOrUpdateComment comment, Authentication authentication) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Comment> addComment(Integer adId, CreateOrUpdateComment comment, Authentication authentication) {
         log.debug("Добавление комментария к объявлению ID: {}", adId);
 
-        // Валидация входных данных
-        if (comment.getText() == null || comment.getText().trim().isEmpty()) {
-            throw new BadRequestException("Текст комментария не может быть пустым");
-        }
+        InputValidator.validateComment(comment);
 
-        if (comment.getText().length() < 8 || comment.getText().length() > 64) {
-            throw new BadRequestException("Текст комментария должен быть от 8 до 64 символов");
+        if (writeBehind.isPresent()) {
+            return writeBehind.get().submit(adId, comment.getText(), authentication.getName());
         }
+        try {
+            return CompletableFuture.completedFuture(
+                    transactionTemplate.execute(status -> saveComment(adId, comment, authentication)));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
+    private Comment saveComment(Integer adId, CreateOrUpdateComment comment, Authentication authentication) {
         AdEntity adEntity = adRepository.findById(adId)
                 .orElseThrow(() -> new NotFoundException("Объявление не найдено с ID: " + adId));
 
-        UserEntity author = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
+        UserSnapshot author = userLookupCache.get(authentication.getName());
 
-        CommentEntity commentEntity = commentMapper.toEntity(comment, author, adEntity);
+        CommentEntity commentEntity = commentMapper.toEntity(comment,
+                userRepository.getReferenceById(author.getId()), adEntity);
         CommentEntity savedComment = commentRepository.save(commentEntity);
+        adRepository.adjustCommentCount(adId, 1);
 
         log.info("Добавлен комментарий ID: {} к объявлению ID: {}, автор: {}",
                 savedComment.getId(), adId, author.getEmail());
 
-        return commentMapper.toDto(savedComment);
+        Comment result = commentMapper.toDto(savedComment);
+        eventPublisher.publishEvent(new CommentChangedEvent(adId, CommentChangedEvent.Type.CREATED, result));
+        return result;
     }
 
     /**
@@ -132,16 +210,20 @@ public class CommentServiceImpl implements CommentService {
             throw new NotFoundException("Комментарий ID: " + commentId + " не принадлежит объявлению ID: " + adId);
         }
 
-        UserEntity currentUser = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
+        UserSnapshot currentUser = userLookupCache.get(authentication.getName());
 
         // Проверка прав: автор комментария или админ
         if (!commentEntity.getAuthor().getId().equals(currentUser.getId()) &&
-                !currentUser.getRole().equals(Role.ADMIN)) {
+                !currentUser.isAdmin()) {
             throw new ForbiddenException("Нет прав на удаление комментария. Только автор или администратор могут удалить комментарий.");
         }
 
         commentRepository.delete(commentEntity);
+        adRepository.adjustCommentCount(adId, -1);
+
+        Comment deleted = new Comment();
+        deleted.setPk(commentId);
+        eventPublisher.publishEvent(new CommentChangedEvent(adId, CommentChangedEvent.Type.DELETED, deleted));
         log.info("Удален комментарий ID: {} к объявлению ID: {}", commentId, adId);
     }
 
@@ -163,14 +245,7 @@ public class CommentServiceImpl implements CommentService {
     public Comment updateComment(Integer adId, Integer commentId, CreateOrUpdateComment comment, Authentication authentication) {
         log.debug("Обновление комментария ID: {} к объявлению ID: {}", commentId, adId);
 
-        // Валидация входных данных
-        if (comment.getText() == null || comment.getText().trim().isEmpty()) {
-            throw new BadRequestException("Текст комментария не может быть пустым");
-        }
-
-        if (comment.getText().length() < 8 || comment.getText().length() > 64) {
-            throw new BadRequestException("Текст комментария должен быть от 8 до 64 символов");
-        }
+        InputValidator.validateComment(comment);
 
         CommentEntity commentEntity = commentRepository.findById(commentId)
                 .orElseThrow(() -> new NotFoundException("Комментарий не найден с ID: " + commentId));
@@ -180,12 +255,11 @@ public class CommentServiceImpl implements CommentService {
             throw new NotFoundException("Комментарий ID: " + commentId + " не принадлежит объявлению ID: " + adId);
         }
 
-        UserEntity currentUser = userRepository.findByEmail(authentication.getName())
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + authentication.getName()));
+        UserSnapshot currentUser = userLookupCache.get(authentication.getName());
 
         // Проверка прав: автор комментария или админ
         if (!commentEntity.getAuthor().getId().equals(currentUser.getId()) &&
-                !currentUser.getRole().equals(Role.ADMIN)) {
+                !currentUser.isAdmin()) {
             throw new ForbiddenException("Нет прав на редактирование комментария. Только автор или администратор могут редактировать комментарий.");
         }
 
@@ -193,6 +267,50 @@ public class CommentServiceImpl implements CommentService {
         CommentEntity updatedComment = commentRepository.save(commentEntity);
 
         log.info("Обновлен комментарий ID: {} к объявлению ID: {}", commentId, adId);
-        return commentMapper.toDto(updatedComment);
+        Comment result = commentMapper.toDto(updatedComment);
+        eventPublisher.publishEvent(new CommentChangedEvent(adId, CommentChangedEvent.Type.UPDATED, result));
+        return result;
+    }
+
+    /**
+     * Открывает поток Server-Sent Events с изменениями комментариев объявления.
+     * События created, updated и deleted приходят после фиксации изменений.
+     *
+     * @param adId идентификатор объявления
+     * @return эмиттер Server-Sent Events
+     * @throws NotFoundException если объявление не найдено
+     * @throws java.util.concurrent.RejectedExecutionException если на узле открыто слишком много потоков
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SseEmitter streamComments(Integer adId) {
+        if (!adRepository.existsById(adId)) {
+            throw new NotFoundException("Объявление не найдено с ID: " + adId);
+        }
+        return commentStreamHub.subscribe(adId);
+    }
+
+    /**
+     * Кодирует ключ комментария (дата создания и идентификатор) в курсор для URL.
+     */
+    private static String encodeCursor(CommentEntity last) {
+        String key = last.getCreatedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает курсор; возвращает комментарий, в котором заполнены только ключевые поля.
+     */
+    private static CommentEntity decodeCursor(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = key.lastIndexOf('|');
+            CommentEntity last = new CommentEntity();
+            last.setCreatedAt(LocalDateTime.parse(key.substring(0, separator)));
+            last.setId(Integer.valueOf(key.substring(separator + 1)));
+            return last;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new BadRequestException("Некорректный курсор страницы");
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,424 @@
+package ru.skypro.homework.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.skypro.homework.event.CommentChangedEvent;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рассылка изменений комментариев подписчикам потока Server-Sent Events.
+ *
+ * <p>Подписки хранятся в памяти узла, сгруппированными по объявлению. Открытый поток
+ * не занимает поток сервлет-контейнера (используется асинхронная обработка запроса),
+ * а у простаивающего подписчика нет ничего, кроме эмиттера и пустой очереди, поэтому
+ * один узел держит десятки тысяч подписок. Изменения рассылаются после фиксации
+ * транзакции: JSON комментария строится один раз и раскладывается по ограниченным
+ * очередям подписчиков, а запись в сокеты выполняет небольшой пул потоков рассылки.
+ * Подписчик, чья очередь переполнена, считается медленным и отключается; клиент
+ * переподключается и перечитывает страницу комментариев. Периодический heartbeat
+ * не дает прокси закрыть простаивающее соединение и выявляет разорванные.</p>
+ *
+ * <p>Запись в сокет блокирующая: клиент, который перестал читать, держит поток рассылки,
+ * пока не истечет таймаут записи Tomcat. Поэтому подписчик, чья отправка длится дольше
+ * {@code write-timeout-ms}, тоже отключается, а на время, пока его поток занят, пул
+ * рассылки получает дополнительный поток, и остальные подписчики не ждут.</p>
+ *
+ * @author Сервис комментариев
+ * @version 1.0
+ */
+@Slf4j
+@Component
+public class CommentStreamHub {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ThreadPoolExecutor dispatcher;
+    private final Counter evicted;
+    private final int maxSubscribers;
+    private final int bufferSize;
+    private final long timeoutMs;
+    private final long reconnectMs;
+    private final int dispatcherThreads;
+    private final long writeTimeoutNanos;
+    /** Потоки рассылки, занятые зависшими отправками; изменяется под блокировкой dispatcher */
+    private int stalledThreads;
+
+    public CommentStreamHub(ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.comments.stream.max-subscribers:50000}") int maxSubscribers,
+                            @Value("${app.comments.stream.buffer-size:32}") int bufferSize,
+                            @Value("${app.comments.stream.timeout-ms:1800000}") long timeoutMs,
+                            @Value("${app.comments.stream.reconnect-ms:3000}") long reconnectMs,
+                            @Value("${app.comments.stream.dispatcher-threads:4}") int dispatcherThreads,
+                            @Value("${app.comments.stream.write-timeout-ms:5000}") long writeTimeoutMs) {
+        this.objectMapper = objectMapper;
+        this.maxSubscribers = maxSubscribers;
+        this.bufferSize = bufferSize;
+        this.timeoutMs = timeoutMs;
+        this.reconnectMs = reconnectMs;
+        this.dispatcherThreads = dispatcherThreads;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMs);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.dispatcher = new ThreadPoolExecutor(dispatcherThreads, dispatcherThreads,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "comment-stream-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("comments.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Открытые потоки комментариев")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("comments.stream.evicted")
+                .description("Медленные подписчики, отключенные из-за переполнения очереди или зависшей записи")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Открывает поток изменений комментариев объявления.
+     *
+     * @param adId идентификатор объявления
+     * @return эмиттер Server-Sent Events
+     * @throws RejectedExecutionException если на узле уже открыто максимальное число потоков
+     */
+    public SseEmitter subscribe(Integer adId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new RejectedExecutionException("Превышено число открытых потоков комментариев: " + maxSubscribers);
+        }
+
+        SseEmitter emitter = newEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(adId, emitter);
+        subscribers.compute(adId, (id, set) -> {
+            Set<Subscriber> result = set != null ? set : ConcurrentHashMap.newKeySet();
+            result.add(subscriber);
+            return result;
+        });
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        // Первое сообщение сразу отдает клиенту заголовки и задает интервал переподключения
+        subscriber.offer(Message.OPENED);
+        return emitter;
+    }
+
+    /**
+     * Рассылает изменение подписчикам объявления после фиксации транзакции.
+     *
+     * @param event событие изменения комментария
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onCommentChanged(CommentChangedEvent event) {
+        Set<Subscriber> targets = subscribers.get(event.getAdId());
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event.getComment());
+        } catch (JsonProcessingException e) {
+            log.error("Не удалось сериализовать комментарий для рассылки: {}", e.getMessage());
+            return;
+        }
+        Message message = new Message(event.getType().name().toLowerCase(),
+                String.valueOf(event.getComment().getPk()), json);
+        for (Subscriber subscriber : targets) {
+            offerOrEvict(subscriber, message);
+        }
+    }
+
+    /**
+     * Отправляет heartbeat всем подписчикам.
+     * Разорванные соединения обнаруживаются при записи и закрываются.
+     */
+    @Scheduled(fixedRateString = "${app.comments.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Set<Subscriber> targets : subscribers.values()) {
+            for (Subscriber subscriber : targets) {
+                offerOrEvict(subscriber, Message.HEARTBEAT);
+            }
+        }
+    }
+
+    /**
+     * Отключает подписчиков, отправка которым длится дольше {@code write-timeout-ms}.
+     * Эмиттер такого подписчика закрывается потоком рассылки, когда отправка завершится.
+     */
+    @Scheduled(fixedDelayString = "${app.comments.stream.write-timeout-ms:5000}")
+    public void evictStalled() {
+        long now = System.nanoTime();
+        for (Set<Subscriber> targets : subscribers.values()) {
+            for (Subscriber subscriber : targets) {
+                if (subscriber.markStalled(now)) {
+                    log.debug("Отключен подписчик потока комментариев объявления ID: {}, запись не завершилась за {} мс",
+                            subscriber.adId, TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+                    evicted.increment();
+                    remove(subscriber);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return количество открытых потоков на узле
+     */
+    public int size() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Закрывает все потоки при остановке приложения.
+     */
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+        List<Subscriber> all = new ArrayList<>();
+        subscribers.values().forEach(all::addAll);
+        all.forEach(this::close);
+    }
+
+    /**
+     * Создает эмиттер подписчика; переопределяется в тестах.
+     */
+    SseEmitter newEmitter(long timeoutMs) {
+        return new SseEmitter(timeoutMs);
+    }
+
+    /**
+     * Добавляет поток рассылки на время зависшей отправки или убирает его после нее.
+     */
+    private void resizeDispatcher(int delta) {
+        synchronized (dispatcher) {
+            stalledThreads += delta;
+            int size = dispatcherThreads + stalledThreads;
+            // Максимум не может быть меньше основного размера пула
+            if (delta > 0) {
+                dispatcher.setMaximumPoolSize(size);
+                dispatcher.setCorePoolSize(size);
+            } else {
+                dispatcher.setCorePoolSize(size);
+                dispatcher.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    private void offerOrEvict(Subscriber subscriber, Message message) {
+        if (!subscriber.offer(message)) {
+            log.debug("Отключен медленный подписчик потока комментариев объявления ID: {}", subscriber.adId);
+            evicted.increment();
+            close(subscriber);
+        }
+    }
+
+    private void close(Subscriber subscriber) {
+        remove(subscriber);
+        // Эмиттер занят, пока идет отправка: его закроет поток рассылки после нее
+        if (subscriber.completeUnlessSending()) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscriber.closed) {
+            return;
+        }
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            subscriber.closed = true;
+            subscriber.pending = null;
+        }
+        subscribers.computeIfPresent(subscriber.adId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+        subscriberCount.decrementAndGet();
+    }
+
+    /**
+     * Сообщение потока. Построитель события SSE создается при отправке,
+     * так как он изменяемый и не может использоваться несколькими подписчиками.
+     */
+    private static final class Message {
+        static final Message OPENED = new Message(null, null, null);
+        static final Message HEARTBEAT = new Message(null, null, null);
+
+        final String name;
+        final String id;
+        final String json;
+
+        Message(String name, String id, String json) {
+            this.name = name;
+            this.id = id;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Подписчик с ограниченной очередью неотправленных сообщений.
+     * Очередь создается только при появлении сообщений, а задача отправки ставится
+     * в пул рассылки не более одного раза, поэтому сообщения одного подписчика
+     * отправляются по порядку и никогда не пишутся в эмиттер одновременно.
+     */
+    private final class Subscriber implements Runnable {
+        final Integer adId;
+        final SseEmitter emitter;
+        volatile boolean closed;
+        ArrayDeque<Message> pending;
+        boolean scheduled;
+        // Текущая отправка; изменяются под блокировкой подписчика
+        long sendStarted;
+        boolean sending;
+        boolean stalled;
+        boolean completeAfterSend;
+
+        Subscriber(Integer adId, SseEmitter emitter) {
+            this.adId = adId;
+            this.emitter = emitter;
+        }
+
+        /**
+         * @return false, если очередь подписчика переполнена
+         */
+        boolean offer(Message message) {
+            synchronized (this) {
+                if (closed) {
+                    return true;
+                }
+                if (pending == null) {
+                    pending = new ArrayDeque<>(4);
+                }
+                if (pending.size() >= bufferSize) {
+                    return false;
+                }
+                pending.add(message);
+                if (scheduled) {
+                    return true;
+                }
+                scheduled = true;
+            }
+            try {
+                dispatcher.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Пул рассылки остановлен вместе с приложением
+                remove(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Message message;
+                synchronized (this) {
+                    message = pending != null ? pending.poll() : null;
+                    if (message == null) {
+                        scheduled = false;
+                        // Пустая очередь простаивающего подписчика не держит память
+                        pending = null;
+                        return;
+                    }
+                    sending = true;
+                    sendStarted = System.nanoTime();
+                }
+                try {
+                    emitter.send(toEvent(message));
+                } catch (IOException | IllegalStateException e) {
+                    // Клиент отключился или поток уже завершен; контейнер сам закроет запрос
+                    remove(this);
+                } finally {
+                    finishSend();
+                }
+            }
+        }
+
+        /**
+         * Отмечает подписчика зависшим и добавляет поток рассылки вместо занятого им.
+         * Под блокировкой подписчика, чтобы поток не был убран раньше, чем добавлен.
+         *
+         * @return true, если текущая отправка длится дольше таймаута и подписчик
+         *         еще не был отмечен как зависший
+         */
+        synchronized boolean markStalled(long now) {
+            if (!sending || stalled || now - sendStarted < writeTimeoutNanos) {
+                return false;
+            }
+            stalled = true;
+            completeAfterSend = true;
+            resizeDispatcher(1);
+            return true;
+        }
+
+        /**
+         * @return true, если эмиттер можно закрыть сразу; иначе он будет закрыт
+         *         после текущей отправки
+         */
+        synchronized boolean completeUnlessSending() {
+            if (sending) {
+                completeAfterSend = true;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Закрывает эмиттер отключенного во время отправки подписчика; подписчик
+         * уже удален, его очередь пуста, и цикл отправки на этом заканчивается.
+         */
+        private void finishSend() {
+            boolean wasStalled;
+            boolean complete;
+            synchronized (this) {
+                sending = false;
+                wasStalled = stalled;
+                complete = completeAfterSend;
+                stalled = false;
+                completeAfterSend = false;
+            }
+            if (wasStalled) {
+                resizeDispatcher(-1);
+            }
+            if (complete) {
+                emitter.complete();
+            }
+        }
+
+        private SseEmitter.SseEventBuilder toEvent(Message message) {
+            if (message == Message.OPENED) {
+                return SseEmitter.event().reconnectTime(reconnectMs).comment("subscribed");
+            }
+            if (message == Message.HEARTBEAT) {
+                return SseEmitter.event().comment("heartbeat");
+            }
+            return SseEmitter.event().name(message.name).id(message.id).data(message.json);
+        }
+    }
+}
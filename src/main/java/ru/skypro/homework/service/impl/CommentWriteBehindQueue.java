@@ -0,0 +1,323 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.dto.Comment;
+import ru.skypro.homework.entity.AdEntity;
+import ru.skypro.homework.entity.CommentEntity;
+import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.event.CommentChangedEvent;
+import ru.skypro.homework.exception.NotFoundException;
+import ru.skypro.homework.mapper.CommentMapper;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.UserRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Отложенная пакетная запись новых комментариев ({@code app.comments.write-behind.enabled=true}).
+ *
+ * <p>Проверенные комментарии попадают в ограниченную очередь в памяти, а один поток записи
+ * забирает их пачками: ждет не дольше {@code linger-ms} после первого комментария или
+ * до заполнения пачки. Пачка записывается одной транзакцией: авторы и объявления
+ * проверяются двумя запросами на всю пачку, строки вставляются пакетом JDBC,
+ * а счетчики комментариев обновляются одним UPDATE на объявление. Вместо
+ * транзакции, поиска объявления, поиска автора и вставки на каждый комментарий
+ * получается несколько запросов на сотни комментариев.</p>
+ *
+ * <p>Гарантии записи: будущий результат завершается только после фиксации транзакции,
+ * поэтому подтвержденный клиенту комментарий уже сохранен в базе. Комментарии,
+ * находящиеся в очереди, хранятся только в памяти: при аварийной остановке узла они
+ * теряются, но их авторы ответа еще не получили. При штатной остановке очередь
+ * дописывается до конца. Если очередь заполнена, новые комментарии отклоняются
+ * с ответом 503. Если пачка не записалась, комментарии записываются по одному,
+ * чтобы ошибка одного из них не затронула остальные.</p>
+ *
+ * <p>Счетчики обновляются через JDBC мимо Hibernate, поэтому после фиксации пачки
+ * объявления с новыми комментариями удаляются из кэша второго уровня.</p>
+ *
+ * @author Сервис комментариев
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.comments.write-behind.enabled", havingValue = "true")
+public class CommentWriteBehindQueue {
+
+    private static final String INSERT_SQL =
+            "insert into comments (text, created_at, ad_id, author_id) values (?, ?, ?, ?)";
+    private static final String COUNT_SQL =
+            "update ads set comment_count = comment_count + ? where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AdRepository adRepository;
+    private final UserRepository userRepository;
+    private final CommentMapper commentMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManagerFactory entityManagerFactory;
+    private final BlockingQueue<PendingComment> queue;
+    private final DistributionSummary batchSizes;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public CommentWriteBehindQueue(JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   AdRepository adRepository,
+                                   UserRepository userRepository,
+                                   CommentMapper commentMapper,
+                                   ApplicationEventPublisher eventPublisher,
+                                   EntityManagerFactory entityManagerFactory,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.comments.write-behind.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${app.comments.write-behind.batch-size:500}") int batchSize,
+                                   @Value("${app.comments.write-behind.linger-ms:5}") long lingerMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.adRepository = adRepository;
+        this.userRepository = userRepository;
+        this.commentMapper = commentMapper;
+        this.eventPublisher = eventPublisher;
+        this.entityManagerFactory = entityManagerFactory;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.writer = new Thread(this::run, "comment-writer");
+        this.writer.setDaemon(true);
+
+        Gauge.builder("comments.write-behind.queue", queue, BlockingQueue::size)
+                .description("Комментарии, ожидающие записи")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("comments.write-behind.batch")
+                .description("Размер записанных пачек комментариев")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Прекращает прием комментариев и дописывает очередь.
+     *
+     * @throws InterruptedException если остановка прервана
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    /**
+     * Ставит проверенный комментарий в очередь записи.
+     *
+     * @param adId   идентификатор объявления
+     * @param text   текст комментария
+     * @param author email автора
+     * @return будущий сохраненный комментарий; завершается после фиксации транзакции
+     *         или с {@link NotFoundException}, если объявление или автор не найдены
+     * @throws RejectedExecutionException если очередь заполнена или приложение останавливается
+     */
+    public CompletableFuture<Comment> submit(Integer adId, String text, String author) {
+        PendingComment pending = new PendingComment(adId, text, author, LocalDateTime.now());
+        if (!running || !queue.offer(pending)) {
+            throw new RejectedExecutionException("Очередь записи комментариев заполнена");
+        }
+        return pending.result;
+    }
+
+    private void run() {
+        List<PendingComment> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingComment first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Ошибка записи пачки комментариев: {}", e.getMessage(), e);
+                batch.forEach(pending -> pending.result.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        // Поток записи прерван: непринятые комментарии не будут сохранены
+        PendingComment pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Приложение останавливается"));
+        }
+    }
+
+    // Добираем пачку, пока она не заполнится или не истечет время ожидания
+    private void collect(List<PendingComment> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingComment next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingComment> batch) {
+        Map<PendingComment, Comment> saved;
+        try {
+            saved = transactionTemplate.execute(status -> insert(batch));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(e);
+                return;
+            }
+            log.warn("Пачка из {} комментариев не записана, запись по одному: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> flush(Collections.singletonList(pending)));
+            return;
+        }
+
+        batchSizes.record(saved.size());
+        // Иначе объявления из кэша второго уровня показывали бы прежний счетчик до истечения ttl
+        saved.keySet().stream()
+                .map(pending -> pending.adId)
+                .distinct()
+                .forEach(adId -> entityManagerFactory.getCache().evict(AdEntity.class, adId));
+        // Транзакция зафиксирована: комментарии сохранены, отвечаем клиентам
+        for (PendingComment pending : batch) {
+            Comment comment = saved.get(pending);
+            if (comment != null) {
+                pending.result.complete(comment);
+            } else if (!pending.result.isDone()) {
+                pending.result.completeExceptionally(
+                        new NotFoundException("Объявление не найдено с ID: " + pending.adId));
+            }
+        }
+    }
+
+    private Map<PendingComment, Comment> insert(List<PendingComment> batch) {
+        Set<Integer> adIds = batch.stream().map(pending -> pending.adId).collect(Collectors.toSet());
+        Set<String> emails = batch.stream().map(pending -> pending.author).collect(Collectors.toSet());
+        Set<Integer> existingAds = new HashSet<>(adRepository.findExistingIds(adIds));
+        Map<String, UserEntity> authors = userRepository.findByEmailIn(emails).stream()
+                .collect(Collectors.toMap(UserEntity::getEmail, Function.identity()));
+
+        List<PendingComment> accepted = new ArrayList<>(batch.size());
+        for (PendingComment pending : batch) {
+            if (!authors.containsKey(pending.author)) {
+                pending.result.completeExceptionally(new NotFoundException("Пользователь не найден: " + pending.author));
+            } else if (existingAds.contains(pending.adId)) {
+                accepted.add(pending);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Integer> ids = jdbcTemplate.execute((ConnectionCallback<List<Integer>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, new String[]{"id"})) {
+                for (PendingComment pending : accepted) {
+                    statement.setString(1, pending.text);
+                    statement.setTimestamp(2, Timestamp.valueOf(pending.createdAt));
+                    statement.setInt(3, pending.adId);
+                    statement.setInt(4, authors.get(pending.author).getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                List<Integer> keys = new ArrayList<>(accepted.size());
+                try (ResultSet generated = statement.getGeneratedKeys()) {
+                    while (generated.next()) {
+                        keys.add(generated.getInt(1));
+                    }
+                }
+                return keys;
+            }
+        });
+        if (ids == null || ids.size() != accepted.size()) {
+            throw new IllegalStateException("Драйвер не вернул идентификаторы вставленных комментариев");
+        }
+
+        // Счетчики обновляются в порядке идентификаторов, чтобы параллельные транзакции не взаимоблокировались
+        Map<Integer, Integer> deltas = new TreeMap<>();
+        accepted.forEach(pending -> deltas.merge(pending.adId, 1, Integer::sum));
+        jdbcTemplate.batchUpdate(COUNT_SQL, deltas.entrySet().stream()
+                .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                .collect(Collectors.toList()));
+
+        Map<PendingComment, Comment> saved = new HashMap<>();
+        for (int i = 0; i < accepted.size(); i++) {
+            PendingComment pending = accepted.get(i);
+            CommentEntity entity = new CommentEntity();
+            entity.setId(ids.get(i));
+            entity.setText(pending.text);
+            entity.setCreatedAt(pending.createdAt);
+            entity.setAuthor(authors.get(pending.author));
+            Comment comment = commentMapper.toDto(entity);
+            saved.put(pending, comment);
+            eventPublisher.publishEvent(new CommentChangedEvent(pending.adId, CommentChangedEvent.Type.CREATED, comment));
+        }
+        log.debug("Записана пачка комментариев: {}, объявлений: {}", accepted.size(), deltas.size());
+        return saved;
+    }
+
+    /**
+     * Комментарий, ожидающий записи, и будущий результат для вызывающего кода.
+     */
+    private static final class PendingComment {
+        final Integer adId;
+        final String text;
+        final String author;
+        final LocalDateTime createdAt;
+        final CompletableFuture<Comment> result = new CompletableFuture<>();
+
+        PendingComment(Integer adId, String text, String author, LocalDateTime createdAt) {
+            this.adId = adId;
+            this.text = text;
+            this.author = author;
+            this.createdAt = createdAt;
+        }
+    }
+}
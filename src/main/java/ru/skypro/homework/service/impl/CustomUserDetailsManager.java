@@ -5,20 +5,19 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.provisioning.UserDetailsManager;
 import org.springframework.stereotype.Service;
-import ru.skypro.homework.repository.UserRepository;
 
 @Service
 public class CustomUserDetailsManager implements UserDetailsManager {
 
-        private final UserRepository userRepository;
+        private final UserLookupCache userLookupCache;
 
-    public CustomUserDetailsManager(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public CustomUserDetailsManager(UserLookupCache userLookupCache) {
+        this.userLookupCache = userLookupCache;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return userRepository.findByEmail(username)
+        return userLookupCache.find(username)
                 .map(user -> org.springframework.security.core.userdetails.User.builder()
                         .username(user.getEmail())
                         .password(user.getPassword())
@@ -51,6 +50,6 @@ public class CustomUserDetailsManager implements UserDetailsManager {
 
     @Override
     public boolean userExists(String username) {
-        return userRepository.existsByEmail(username);
+        return userLookupCache.find(username).isPresent();
     }
 }
\ No newline at end of file
@@ -1,43 +1,152 @@
 package ru.skypro.homework.service.impl;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.multipart.MultipartFile;
+import ru.skypro.homework.exception.BadRequestException;
+import ru.skypro.homework.storage.ImageStore;
+import ru.skypro.homework.storage.PackFileImageStore;
+import ru.skypro.homework.storage.StoredImage;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class FileService {
 
-    private final Path rootLocation = Paths.get("uploads");
-
+    private final ImageStore imageStore;
+
+    /** Хранилище маленьких изображений в сегментах, если включено */
+    private final Optional<PackFileImageStore> packStore;
+
+    /** Пул потоков для работы с диском, см. {@link ru.skypro.homework.config.ImageIoConfig} */
+    private final ThreadPoolTaskExecutor imageIoExecutor;
+
+    /**
+     * Сохраняет загруженное изображение за один проход по потоку.
+     * Формат определяется по сигнатуре файла, поэтому подделанный Content-Type
+     * отклоняется до записи в хранилище. Во время записи считается SHA-256 и
+     * из заголовков извлекаются размеры изображения; хранилище публикует
+     * содержимое только целиком, так что читатели не видят недописанных файлов.
+     *
+     * @param file   загруженный файл
+     * @param subdir поддиректория (ads или users)
+     * @return путь к сохраненному файлу относительно корня загрузок вида /ads/ab/cd/имя
+     * @throws IOException         при ошибке записи
+     * @throws BadRequestException если содержимое не является изображением JPEG или PNG
+     */
     public String saveImage(MultipartFile file, String subdir) throws IOException {
-        // Создаем директорию, если она не существует
-        Path directory = rootLocation.resolve(subdir);
-        if (!Files.exists(directory)) {
-            Files.createDirectories(directory);
-        }
+        try (InputStream in = file.getInputStream()) {
+            // Определяем формат по сигнатуре, ничего не записывая в хранилище
+            byte[] header = in.readNBytes(ImageFormat.SIGNATURE_LENGTH);
+            ImageFormat format = ImageFormat.detect(header, header.length);
+            if (format == null) {
+                throw new BadRequestException("Разрешены только изображения в формате JPEG, JPG или PNG");
+            }
 
-        // Генерируем уникальное имя файла
-        String originalFilename = file.getOriginalFilename();
-        String extension = "";
-        if (originalFilename != null && originalFilename.contains(".")) {
-            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+            // Генерируем уникальное имя файла, расширение берем из реального формата
+            String filename = UUID.randomUUID() + format.getExtension();
+            String imagePath = shardedPath(subdir, filename);
+            String key = toKey(imagePath);
+
+            // Маленькие изображения, если разрешено, дописываются в сегменты
+            ImageStore store = packStore
+                    .filter(pack -> pack.accepts(file.getSize()))
+                    .map(ImageStore.class::cast)
+                    .orElse(imageStore);
+
+            ImageInspectingInputStream content = new ImageInspectingInputStream(
+                    new SequenceInputStream(new ByteArrayInputStream(header), in), format);
+            store.save(key, content, file.getSize());
+
+            // Ключ еще нигде не сохранен, поэтому поврежденный файл можно просто удалить
+            if (!content.hasDimensions()) {
+                store.delete(key);
+                throw new BadRequestException("Файл поврежден или не является изображением " + format);
+            }
+
+            log.info("Файл сохранен: {} ({}x{}, {} байт, sha-256: {})", imagePath,
+                    content.getWidth(), content.getHeight(), content.getSize(), content.getChecksum());
+            return imagePath;
         }
+    }
 
-        String filename = UUID.randomUUID().toString() + extension;
-        Path destination = directory.resolve(filename);
+    /**
+     * Сохраняет изображение в пуле потоков ввода-вывода, см. {@link #saveImage(MultipartFile, String)}.
+     *
+     * @param file   загруженный файл
+     * @param subdir поддиректория (ads или users)
+     * @return будущий путь к сохраненному файлу; при ошибке записи завершается
+     *         {@link CompletionException} с {@link IOException} в качестве причины
+     * @throws java.util.concurrent.RejectedExecutionException если пул ввода-вывода перегружен
+     */
+    public CompletableFuture<String> saveImageAsync(MultipartFile file, String subdir) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return saveImage(file, subdir);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, imageIoExecutor.getThreadPoolExecutor());
+    }
+
+    /**
+     * Строит путь к файлу в раскладке с двумя уровнями подкаталогов.
+     * Каталоги берутся из MD5 имени файла (например, /ads/3f/a2/имя), поэтому
+     * в каждом каталоге остается не более нескольких сотен файлов даже
+     * при миллионах изображений.
+     *
+     * @param subdir   поддиректория (ads или users)
+     * @param filename имя файла
+     * @return путь к файлу относительно корня загрузок
+     */
+    public String shardedPath(String subdir, String filename) {
+        String hash = DigestUtils.md5DigestAsHex(filename.getBytes(StandardCharsets.UTF_8));
+        return String.format("/%s/%s/%s/%s", subdir, hash.substring(0, 2), hash.substring(2, 4), filename);
+    }
 
-        // Сохраняем файл
-        Files.copy(file.getInputStream(), destination);
+    /**
+     * Проверяет, сохранен ли файл в раскладке с подкаталогами.
+     *
+     * @param path путь к файлу относительно корня загрузок
+     * @return true, если путь имеет вид /subdir/ab/cd/имя
+     */
+    public boolean isShardedPath(String path) {
+        return toKey(path).split("/").length == 4;
+    }
 
-        log.info("Файл сохранен: {}", destination);
-        return String.format("/%s/%s", subdir, filename);
+    /**
+     * Делает файл из плоской раскладки (/ads/имя) доступным по пути в раскладке
+     * с подкаталогами, по возможности без копирования данных.
+     * Старый файл не удаляется: это делает вызывающий код после того,
+     * как новый путь сохранен в базе данных.
+     *
+     * @param path путь к файлу в плоской раскладке
+     * @return новый путь к файлу
+     * @throws IOException если исходный файл отсутствует или не удалось создать ссылку
+     */
+    public String linkToShardedPath(String path) throws IOException {
+        String key = toKey(path);
+        int slash = key.indexOf('/');
+        if (slash < 0) {
+            throw new IOException("Некорректный путь к файлу: " + path);
+        }
+        String newPath = shardedPath(key.substring(0, slash), key.substring(slash + 1));
+        storeFor(key).link(key, toKey(newPath));
+        return newPath;
     }
 
     public byte[] loadImage(String path) throws IOException {
@@ -45,17 +154,35 @@ public class FileService {
             throw new IOException("Путь к файлу не указан");
         }
 
-        // Убираем начальный слэш, если есть
-        if (path.startsWith("/")) {
-            path = path.substring(1);
-        }
+        String key = toKey(path);
+        return storeFor(key).load(key);
+    }
 
-        Path filePath = rootLocation.resolve(path);
-        if (!Files.exists(filePath)) {
-            throw new IOException("Файл не найден: " + filePath);
+    /**
+     * Загружает изображение, не блокируя вызывающий поток.
+     *
+     * @param path путь к файлу относительно корня загрузок
+     * @return будущее содержимое; при ошибке чтения завершается
+     *         {@link CompletionException} с {@link IOException} в качестве причины
+     * @throws java.util.concurrent.RejectedExecutionException если пул ввода-вывода перегружен
+     */
+    public CompletableFuture<byte[]> loadImageAsync(String path) {
+        if (path == null || path.isEmpty()) {
+            return CompletableFuture.failedFuture(new CompletionException(new IOException("Путь к файлу не указан")));
         }
 
-        return Files.readAllBytes(filePath);
+        String key = toKey(path);
+        return storeFor(key).loadAsync(key, imageIoExecutor.getThreadPoolExecutor());
+    }
+
+    /**
+     * Извлекает исходную ошибку из исключения, которым завершилась асинхронная операция.
+     *
+     * @param e исключение асинхронной операции
+     * @return исходная ошибка
+     */
+    public static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
 
     public void deleteImage(String path) throws IOException {
@@ -63,27 +190,46 @@ public class FileService {
             return;
         }
 
-        // Убираем начальный слэш, если есть
-        if (path.startsWith("/")) {
-            path = path.substring(1);
+        String key = toKey(path);
+        if (storeFor(key).delete(key)) {
+            log.info("Файл удален: {}", path);
         }
+    }
 
-        Path filePath = rootLocation.resolve(path);
-        if (Files.exists(filePath)) {
-            Files.delete(filePath);
-            log.info("Файл удален: {}", filePath);
+    /**
+     * Обходит все изображения в хранилище, включая хранилище маленьких изображений.
+     * Ключ изображения совпадает с путем в базе данных без начального слэша.
+     *
+     * @param consumer получатель сведений об изображениях
+     * @throws IOException при ошибке обращения к хранилищу
+     */
+    public void listImages(Consumer<StoredImage> consumer) throws IOException {
+        imageStore.list(consumer);
+        if (packStore.isPresent()) {
+            packStore.get().list(consumer);
         }
     }
 
-    // Метод для инициализации корневой директории при запуске
+    // Метод для инициализации хранилища при запуске
     public void init() {
         try {
-            if (!Files.exists(rootLocation)) {
-                Files.createDirectories(rootLocation);
-                log.info("Создана корневая директория для загрузок: {}", rootLocation);
-            }
+            imageStore.init();
+            log.info("Хранилище изображений: {}", imageStore.getClass().getSimpleName());
         } catch (IOException e) {
-            log.error("Не удалось создать корневую директорию: {}", e.getMessage());
+            log.error("Не удалось подготовить хранилище изображений: {}", e.getMessage());
+        }
+    }
+
+    // Индекс сегментов хранится в памяти, поэтому проверка не обращается к диску
+    private ImageStore storeFor(String key) {
+        if (packStore.isPresent() && packStore.get().exists(key)) {
+            return packStore.get();
         }
+        return imageStore;
+    }
+
+    // Убираем начальный слэш, если есть: ключ в хранилище задается без него
+    private static String toKey(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.skypro.homework.event.ImageDeletionEvent;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очередь фонового удаления файлов изображений.
+ * Принимает {@link ImageDeletionEvent} после завершения транзакции и удаляет файлы
+ * пачками в отдельном потоке, поэтому запросы не ждут дискового ввода-вывода,
+ * а откат транзакции не оставляет в базе ссылок на удаленные файлы.
+ * Неудачные удаления повторяются с экспоненциальной задержкой.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ImageDeletionQueue {
+
+    private final FileService fileService;
+    private final DelayQueue<DeletionTask> queue = new DelayQueue<>();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "image-deletion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.images.deletion.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.images.deletion.interval-ms:500}")
+    private long intervalMs;
+
+    @Value("${app.images.deletion.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.images.deletion.retry-delay-ms:1000}")
+    private long retryDelayMs;
+
+    @PostConstruct
+    public void start() {
+        worker.scheduleWithFixedDelay(this::processBatch, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * При остановке приложения пытается удалить то, что осталось в очереди.
+     */
+    @PreDestroy
+    public void stop() {
+        worker.shutdownNow();
+        List<DeletionTask> remaining = new ArrayList<>(queue);
+        queue.clear();
+        remaining.forEach(task -> delete(task, false));
+    }
+
+    /**
+     * Ставит файл в очередь после фиксации транзакции.
+     * Вне транзакции файл ставится в очередь сразу.
+     *
+     * @param event событие удаления изображения
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCommit(ImageDeletionEvent event) {
+        if (!event.isOnRollback()) {
+            enqueue(event.getPath());
+        }
+    }
+
+    /**
+     * Ставит в очередь файл, загруженный в откатившейся транзакции.
+     *
+     * @param event событие удаления изображения
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_ROLLBACK)
+    public void onRollback(ImageDeletionEvent event) {
+        if (event.isOnRollback()) {
+            enqueue(event.getPath());
+        }
+    }
+
+    /**
+     * @return количество файлов, ожидающих удаления
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    private void enqueue(String path) {
+        if (path != null && !path.isEmpty()) {
+            queue.add(new DeletionTask(path, 1, 0));
+        }
+    }
+
+    private void processBatch() {
+        List<DeletionTask> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            for (DeletionTask task : batch) {
+                delete(task, true);
+            }
+            log.debug("Обработана пачка удаления изображений: {}", batch.size());
+            batch.clear();
+        }
+    }
+
+    private void delete(DeletionTask task, boolean retry) {
+        try {
+            fileService.deleteImage(task.path);
+        } catch (IOException | RuntimeException e) {
+            if (retry && task.attempt < maxAttempts) {
+                long delay = retryDelayMs << (task.attempt - 1);
+                log.warn("Не удалось удалить изображение {} (попытка {}), повтор через {} мс: {}",
+                        task.path, task.attempt, delay, e.getMessage());
+                queue.add(new DeletionTask(task.path, task.attempt + 1, delay));
+            } else {
+                log.error("Не удалось удалить изображение {} после {} попыток: {}",
+                        task.path, task.attempt, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Задача удаления одного файла с номером попытки и временем, когда ее можно выполнять.
+     */
+    private static final class DeletionTask implements Delayed {
+        final String path;
+        final int attempt;
+        final long readyAt;
+
+        DeletionTask(String path, int attempt, long delayMs) {
+            this.path = path;
+            this.attempt = attempt;
+            this.readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.skypro.homework.service.impl;
+
+/**
+ * Поддерживаемые форматы изображений.
+ * Формат определяется по сигнатуре (magic bytes) в начале файла,
+ * а не по заголовку Content-Type, который присылает клиент.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+public enum ImageFormat {
+
+    JPEG("image/jpeg", ".jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+    PNG("image/png", ".png", new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+
+    /** Количество байтов, достаточное для определения формата */
+    public static final int SIGNATURE_LENGTH = 8;
+
+    private final String contentType;
+    private final String extension;
+    private final byte[] signature;
+
+    ImageFormat(String contentType, String extension, byte[] signature) {
+        this.contentType = contentType;
+        this.extension = extension;
+        this.signature = signature;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Определяет формат изображения по первым байтам файла.
+     *
+     * @param header первые байты файла
+     * @param length количество прочитанных байтов
+     * @return формат изображения или null, если сигнатура не распознана
+     */
+    public static ImageFormat detect(byte[] header, int length) {
+        for (ImageFormat format : values()) {
+            if (format.matches(header, length)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(byte[] header, int length) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,257 @@
+package ru.skypro.homework.service.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Поток, который при однократном чтении загружаемого изображения
+ * считает контрольную сумму SHA-256, размер и извлекает ширину и высоту
+ * из заголовков JPEG/PNG без полного декодирования картинки.
+ *
+ * <p>Разбор заголовков ведется на лету: для PNG читается чанк IHDR,
+ * для JPEG пропускаются сегменты до первого маркера SOFn.
+ * После того как размеры найдены, поток только считает контрольную сумму.</p>
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+public class ImageInspectingInputStream extends FilterInputStream {
+
+    private static final int JPEG_MARKER = 0;
+    private static final int JPEG_CODE = 1;
+    private static final int JPEG_LENGTH = 2;
+    private static final int JPEG_FRAME = 3;
+
+    private static final byte[] PNG_IHDR = {'I', 'H', 'D', 'R'};
+
+    private final ImageFormat format;
+    private final MessageDigest digest;
+
+    private long size;
+    private String checksum;
+
+    // Состояние разбора заголовков
+    private boolean inspected;
+    private long skip;
+    private int position;
+    private int state = JPEG_MARKER;
+    private boolean frameSegment;
+    private int value;
+    private int width;
+    private int height;
+    /** Оба размера прочитаны полностью; в оборванном заголовке размер прочитан частично */
+    private boolean dimensionsRead;
+
+    /**
+     * @param in     исходный поток с содержимым файла, начиная с первого байта
+     * @param format формат, определенный по сигнатуре файла
+     */
+    public ImageInspectingInputStream(InputStream in, ImageFormat format) {
+        super(in);
+        this.format = format;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 не поддерживается", e);
+        }
+        // Сигнатура уже проверена при определении формата
+        this.skip = format == ImageFormat.JPEG ? 2 : 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            digest.update((byte) b);
+            size++;
+            if (!inspected) {
+                inspect(new byte[]{(byte) b}, 0, 1);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            digest.update(b, off, n);
+            size += n;
+            if (!inspected) {
+                inspect(b, off, n);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Пропущенные байты тоже должны попасть в контрольную сумму
+        byte[] buffer = new byte[8192];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public ImageFormat getFormat() {
+        return format;
+    }
+
+    /** @return количество прочитанных байтов */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Размеры PNG больше 2^31 - 1 спецификацией не допускаются и дают здесь отрицательное число.
+     *
+     * @return true, если из заголовков удалось извлечь положительные размеры изображения
+     */
+    public boolean hasDimensions() {
+        return dimensionsRead && width > 0 && height > 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Возвращает контрольную сумму прочитанного содержимого.
+     * Вызывается после того, как поток прочитан полностью.
+     *
+     * @return SHA-256 в шестнадцатеричном виде
+     */
+    public String getChecksum() {
+        if (checksum == null) {
+            byte[] hash = digest.digest();
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte h : hash) {
+                sb.append(Character.forDigit((h >> 4) & 0xF, 16))
+                        .append(Character.forDigit(h & 0xF, 16));
+            }
+            checksum = sb.toString();
+        }
+        return checksum;
+    }
+
+    private void inspect(byte[] b, int off, int len) {
+        int i = off;
+        int end = off + len;
+        while (i < end && !inspected) {
+            if (skip > 0) {
+                int step = (int) Math.min(skip, end - i);
+                skip -= step;
+                i += step;
+                continue;
+            }
+            int next = b[i++] & 0xFF;
+            if (format == ImageFormat.PNG) {
+                acceptPng(next);
+            } else {
+                acceptJpeg(next);
+            }
+        }
+    }
+
+    /**
+     * Сигнатура (8 байт), длина чанка (4), тип "IHDR" (4), ширина (4), высота (4).
+     */
+    private void acceptPng(int b) {
+        int pos = position++;
+        if (pos >= 12 && pos < 16) {
+            if (b != PNG_IHDR[pos - 12]) {
+                inspected = true;
+            }
+        } else if (pos >= 16 && pos < 20) {
+            width = (width << 8) | b;
+        } else if (pos >= 20 && pos < 24) {
+            height = (height << 8) | b;
+            if (pos == 23) {
+                dimensionsRead = true;
+                inspected = true;
+            }
+        }
+    }
+
+    private void acceptJpeg(int b) {
+        switch (state) {
+            case JPEG_MARKER:
+                if (b != 0xFF) {
+                    inspected = true;
+                } else {
+                    state = JPEG_CODE;
+                }
+                break;
+            case JPEG_CODE:
+                if (b == 0xFF) {
+                    // Байты-заполнители между маркерами
+                    break;
+                }
+                if (b == 0x01 || b == 0xD8 || (b >= 0xD0 && b <= 0xD7)) {
+                    // Маркеры без длины
+                    state = JPEG_MARKER;
+                } else if (b == 0xD9 || b == 0xDA) {
+                    // Конец изображения или начало сканирования до заголовка кадра
+                    inspected = true;
+                } else {
+                    frameSegment = isFrameMarker(b);
+                    state = JPEG_LENGTH;
+                    position = 0;
+                    value = 0;
+                }
+                break;
+            case JPEG_LENGTH:
+                value = (value << 8) | b;
+                if (++position == 2) {
+                    if (value < 2) {
+                        inspected = true;
+                    } else if (frameSegment) {
+                        state = JPEG_FRAME;
+                        position = 0;
+                    } else {
+                        skip = value - 2;
+                        state = JPEG_MARKER;
+                    }
+                }
+                break;
+            case JPEG_FRAME:
+                // Точность (1 байт), высота (2), ширина (2)
+                int pos = position++;
+                if (pos == 1 || pos == 2) {
+                    height = (height << 8) | b;
+                } else if (pos == 3 || pos == 4) {
+                    width = (width << 8) | b;
+                    if (pos == 4) {
+                        dimensionsRead = true;
+                        inspected = true;
+                    }
+                }
+                break;
+            default:
+                inspected = true;
+        }
+    }
+
+    private static boolean isFrameMarker(int code) {
+        return code >= 0xC0 && code <= 0xCF
+                && code != 0xC4 && code != 0xC8 && code != 0xCC;
+    }
+}
@@ -0,0 +1,128 @@
+package ru.skypro.homework.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Кэш отрицательных результатов поиска изображений.
+ * Запоминает на короткое время, что у объявления или пользователя нет изображения
+ * (путь не задан или файла нет в хранилище), чтобы повторные запросы отвечали 404
+ * без обращения к базе данных и хранилищу. Запись удаляется при загрузке нового изображения.
+ *
+ * <p>Запрос, который начал поиск до загрузки изображения, может запомнить отсутствие
+ * уже после сброса записи, и новое изображение отвечало бы 404 до конца ttl. Поэтому
+ * поиск начинается с чтения поколения записи ({@link #generation}), сброс увеличивает
+ * поколение, а отсутствие, найденное в устаревшем поколении, не запоминается. Поколения
+ * хранятся в фиксированном числе счетчиков, общих для нескольких записей: сброс одной
+ * из них лишь изредка мешает запомнить отсутствие для другой.</p>
+ *
+ * <p>Записи разделены по поддиректориям изображений ({@code ads}, {@code users}).
+ * Метрики публикуются как {@code cache.*} с тегом {@code cache=missingImages.<поддиректория>}.</p>
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Component
+public class MissingImageCache {
+
+    /** Число счетчиков поколений в каждой поддиректории, степень двойки */
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Map<String, Cache<Integer, Boolean>> caches = new HashMap<>();
+    private final Map<String, AtomicLongArray> generations = new HashMap<>();
+
+    public MissingImageCache(MeterRegistry meterRegistry,
+                             @Value("${app.images.missing-cache.ttl-seconds:30}") long ttlSeconds,
+                             @Value("${app.images.missing-cache.max-size:100000}") long maxSize) {
+        for (String subdir : new String[]{"ads", "users"}) {
+            Cache<Integer, Boolean> cache = Caffeine.newBuilder()
+                    .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                    .maximumSize(maxSize)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "missingImages." + subdir);
+            caches.put(subdir, cache);
+            generations.put(subdir, new AtomicLongArray(GENERATION_STRIPES));
+        }
+    }
+
+    /**
+     * @param subdir поддиректория изображений (ads или users)
+     * @param id     идентификатор объявления или пользователя
+     * @return true, если недавно выяснилось, что изображения нет
+     */
+    public boolean isMissing(String subdir, Integer id) {
+        return cache(subdir).getIfPresent(id) != null;
+    }
+
+    /**
+     * Читается перед поиском изображения в базе данных и хранилище.
+     *
+     * @param subdir поддиректория изображений (ads или users)
+     * @param id     идентификатор объявления или пользователя
+     * @return текущее поколение записи
+     */
+    public long generation(String subdir, Integer id) {
+        return generations(subdir).get(stripe(id));
+    }
+
+    /**
+     * Запоминает, что изображения нет, если с начала поиска запись не сбрасывалась.
+     *
+     * @param subdir     поддиректория изображений (ads или users)
+     * @param id         идентификатор объявления или пользователя
+     * @param generation поколение, прочитанное до начала поиска
+     */
+    public void markMissing(String subdir, Integer id, long generation) {
+        AtomicLongArray stripes = generations(subdir);
+        if (stripes.get(stripe(id)) != generation) {
+            return;
+        }
+        cache(subdir).put(id, Boolean.TRUE);
+        // Сброс мог пройти между проверкой и записью: тогда запись удаляется здесь
+        if (stripes.get(stripe(id)) != generation) {
+            cache(subdir).invalidate(id);
+        }
+    }
+
+    /**
+     * Забывает отрицательный результат; вызывается после загрузки изображения.
+     * Поиски, начатые раньше, свой результат уже не запомнят.
+     *
+     * @param subdir поддиректория изображений (ads или users)
+     * @param id     идентификатор объявления или пользователя
+     */
+    public void invalidate(String subdir, Integer id) {
+        generations(subdir).incrementAndGet(stripe(id));
+        cache(subdir).invalidate(id);
+    }
+
+    private AtomicLongArray generations(String subdir) {
+        AtomicLongArray stripes = generations.get(subdir);
+        if (stripes == null) {
+            throw new IllegalArgumentException("Неизвестная поддиректория изображений: " + subdir);
+        }
+        return stripes;
+    }
+
+    private static int stripe(Integer id) {
+        return id.hashCode() & (GENERATION_STRIPES - 1);
+    }
+
+    private Cache<Integer, Boolean> cache(String subdir) {
+        Cache<Integer, Boolean> cache = caches.get(subdir);
+        if (cache == null) {
+            throw new IllegalArgumentException("Неизвестная поддиректория изображений: " + subdir);
+        }
+        return cache;
+    }
+}
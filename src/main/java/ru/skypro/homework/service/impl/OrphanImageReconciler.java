@@ -0,0 +1,264 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.ImagePath;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.storage.StoredImage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Фоновая сверка хранилища изображений с базой данных.
+ * Находит файлы, на которые не ссылается ни одно объявление и ни один пользователь
+ * (остатки неудачных удалений и прерванных загрузок), и удаляет их.
+ *
+ * <p>Сначала пути из колонок {@code ads.image} и {@code users.image} читаются пачками
+ * по ключу и складываются в фильтр Блума, затем хранилище обходится потоком.
+ * Файл, которого нет в фильтре, точно не использовался на момент чтения базы;
+ * такие кандидаты все равно перепроверяются точным запросом пачками, так как
+ * ссылка могла появиться позже. Файлы моложе периода ожидания не трогаются:
+ * они могут принадлежать еще не зафиксированной транзакции. Скорость удаления
+ * ограничена, чтобы сверка не нагружала диск во время работы приложения.</p>
+ *
+ * <p>Сверка идет часами, поэтому выполняется в собственном потоке, а не в общем
+ * планировщике {@code @Scheduled}: иначе на время сверки остановились бы пульс
+ * подписок на комментарии, проверка реплик и остальные задачи по расписанию.</p>
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrphanImageReconciler {
+
+    private final AdRepository adRepository;
+    private final UserRepository userRepository;
+    private final FileService fileService;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "image-reconciler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.images.reconciler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.reconciler.grace-period-hours:24}")
+    private long gracePeriodHours;
+
+    @Value("${app.images.reconciler.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.images.reconciler.max-deletes-per-second:20}")
+    private int maxDeletesPerSecond;
+
+    @Value("${app.images.reconciler.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${app.images.reconciler.initial-delay-ms:600000}")
+    private long initialDelayMs;
+
+    @Value("${app.images.reconciler.interval-ms:21600000}")
+    private long intervalMs;
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            worker.scheduleWithFixedDelay(this::scheduledReconcile, initialDelayMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Прерывает идущую сверку: ожидание между удалениями завершается сразу.
+     */
+    @PreDestroy
+    public void stop() {
+        worker.shutdownNow();
+    }
+
+    private void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (IOException | RuntimeException e) {
+            log.error("Сверка хранилища изображений прервана: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Выполняет одну сверку хранилища с базой данных.
+     *
+     * @return количество освобожденных байтов
+     * @throws IOException при ошибке обхода хранилища
+     */
+    public synchronized long reconcile() throws IOException {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(gracePeriodHours));
+        long started = System.nanoTime();
+
+        BloomFilter referenced = new BloomFilter(adRepository.count() + userRepository.count(), falsePositiveRate);
+        loadReferences(adRepository::findImagePathsAfter, referenced);
+        loadReferences(userRepository::findImagePathsAfter, referenced);
+
+        Run run = new Run();
+        List<StoredImage> candidates = new ArrayList<>(batchSize);
+        fileService.listImages(image -> {
+            run.scanned++;
+            if (run.interrupted || image.getLastModified().isAfter(cutoff)
+                    || referenced.mightContain(image.getKey())) {
+                return;
+            }
+            candidates.add(image);
+            if (candidates.size() >= batchSize) {
+                deleteOrphans(candidates, run);
+                candidates.clear();
+            }
+        });
+        deleteOrphans(candidates, run);
+
+        log.info("Сверка хранилища изображений завершена за {} мс: просмотрено {}, удалено {}, освобождено {} байт",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), run.scanned, run.deleted, run.reclaimed);
+        return run.reclaimed;
+    }
+
+    private void loadReferences(BiFunction<Integer, Pageable, List<ImagePath>> finder, BloomFilter referenced) {
+        int afterId = 0;
+        while (true) {
+            List<ImagePath> batch = finder.apply(afterId, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+            for (ImagePath item : batch) {
+                referenced.add(toKey(item.getImage()));
+            }
+        }
+    }
+
+    private void deleteOrphans(List<StoredImage> candidates, Run run) {
+        if (candidates.isEmpty() || run.interrupted) {
+            return;
+        }
+
+        // В базе пути хранятся со слэшем в начале, ключи хранилища без него
+        Set<String> paths = new HashSet<>();
+        for (StoredImage image : candidates) {
+            paths.add(image.getKey());
+            paths.add("/" + image.getKey());
+        }
+        Set<String> used = new HashSet<>();
+        adRepository.findExistingImages(paths).forEach(path -> used.add(toKey(path)));
+        userRepository.findExistingImages(paths).forEach(path -> used.add(toKey(path)));
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxDeletesPerSecond);
+        for (StoredImage image : candidates) {
+            if (used.contains(image.getKey())) {
+                continue;
+            }
+            long wait = run.lastDelete + interval - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    run.interrupted = true;
+                    return;
+                }
+            }
+            run.lastDelete = System.nanoTime();
+            try {
+                fileService.deleteImage("/" + image.getKey());
+                run.deleted++;
+                run.reclaimed += image.getSize();
+                log.debug("Удален файл без ссылок: {} ({} байт)", image.getKey(), image.getSize());
+            } catch (IOException e) {
+                log.warn("Не удалось удалить файл без ссылок {}: {}", image.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private static String toKey(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    /**
+     * Счетчики одной сверки.
+     */
+    private static final class Run {
+        long scanned;
+        long deleted;
+        long reclaimed;
+        long lastDelete;
+        boolean interrupted;
+    }
+
+    /**
+     * Фильтр Блума для строк: может ошибочно сказать, что строка есть,
+     * но никогда не ошибается, что ее нет. Позиции битов вычисляются
+     * двойным хешированием из двух независимых хешей строки.
+     */
+    static final class BloomFilter {
+        private final BitSet bits;
+        private final int size;
+        private final int hashes;
+
+        BloomFilter(long expectedInsertions, double falsePositiveRate) {
+            long n = Math.max(expectedInsertions, 1000);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.size = (int) Math.min(m, Integer.MAX_VALUE - 8);
+            this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+            this.bits = new BitSet(size);
+        }
+
+        void add(String value) {
+            int h1 = value.hashCode();
+            int h2 = fnv1a(value);
+            for (int i = 0; i < hashes; i++) {
+                bits.set(index(h1 + i * h2));
+            }
+        }
+
+        boolean mightContain(String value) {
+            int h1 = value.hashCode();
+            int h2 = fnv1a(value);
+            for (int i = 0; i < hashes; i++) {
+                if (!bits.get(index(h1 + i * h2))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int index(int hash) {
+            return Math.floorMod(hash, size);
+        }
+
+        private static int fnv1a(String value) {
+            int hash = 0x811c9dc5;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x01000193;
+            }
+            // Нечетный шаг обходит разные позиции при любом размере фильтра
+            return hash | 1;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.ImagePath;
+import ru.skypro.homework.repository.UserRepository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Однократная миграция загруженных файлов из плоской раскладки
+ * (uploads/ads/имя) в раскладку с подкаталогами (uploads/ads/ab/cd/имя).
+ *
+ * <p>Включается свойством {@code app.uploads.migrate-layout=true} и выполняется
+ * в фоновом потоке, не мешая работе приложения. Записи обходятся пачками по ключу;
+ * для каждой пачки файл сначала получает жесткую ссылку по новому пути,
+ * затем в короткой транзакции пути в базе заменяются условным UPDATE,
+ * и только после фиксации удаляется старый файл. Если пользователь успел
+ * загрузить новое изображение, условный UPDATE ничего не меняет и созданная ссылка удаляется.</p>
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UploadLayoutMigration implements CommandLineRunner {
+
+    private final AdRepository adRepository;
+    private final UserRepository userRepository;
+    private final FileService fileService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.uploads.migrate-layout:false}")
+    private boolean enabled;
+
+    @Value("${app.uploads.migration.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Запускает миграцию в отдельном потоке, если она включена.
+     *
+     * @param args аргументы командной строки
+     */
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        Thread worker = new Thread(this::migrate, "uploads-layout-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Переносит изображения объявлений и аватары пользователей в новую раскладку.
+     */
+    public void migrate() {
+        log.info("Запущена миграция каталога загрузок на раскладку с подкаталогами, размер пачки: {}", batchSize);
+        try {
+            int ads = migrateTable("ads", adRepository::findImagePathsAfter, adRepository::replaceImage);
+            int users = migrateTable("users", userRepository::findImagePathsAfter, userRepository::replaceImage);
+            log.info("Миграция каталога загрузок завершена: перенесено изображений объявлений {}, аватаров {}",
+                    ads, users);
+        } catch (RuntimeException e) {
+            log.error("Миграция каталога загрузок прервана: {}", e.getMessage(), e);
+        }
+    }
+
+    private int migrateTable(String table,
+                             BiFunction<Integer, Pageable, List<ImagePath>> finder,
+                             ImageUpdater updater) {
+        int migrated = 0;
+        int afterId = 0;
+        while (true) {
+            List<ImagePath> batch = finder.apply(afterId, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return migrated;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+
+            // Создаем ссылки по новым путям вне транзакции
+            List<Integer> ids = new ArrayList<>();
+            List<String> oldPaths = new ArrayList<>();
+            List<String> newPaths = new ArrayList<>();
+            for (ImagePath item : batch) {
+                String image = item.getImage();
+                if (image.isEmpty() || fileService.isShardedPath(image)) {
+                    continue;
+                }
+                try {
+                    newPaths.add(fileService.linkToShardedPath(image));
+                    ids.add(item.getId());
+                    oldPaths.add(image);
+                } catch (IOException e) {
+                    log.warn("Не удалось перенести файл {} ({} ID: {}): {}", image, table, item.getId(), e.getMessage());
+                }
+            }
+            if (ids.isEmpty()) {
+                continue;
+            }
+
+            // Переписываем пути одной короткой транзакцией на пачку
+            boolean[] replaced = new boolean[ids.size()];
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (int i = 0; i < ids.size(); i++) {
+                        replaced[i] = updater.replace(ids.get(i), oldPaths.get(i), newPaths.get(i)) == 1;
+                    }
+                });
+            } catch (RuntimeException e) {
+                newPaths.forEach(this::deleteQuietly);
+                throw e;
+            }
+
+            // После фиксации удаляем старые файлы, а неиспользованные ссылки убираем
+            for (int i = 0; i < ids.size(); i++) {
+                if (replaced[i]) {
+                    deleteQuietly(oldPaths.get(i));
+                    migrated++;
+                } else {
+                    deleteQuietly(newPaths.get(i));
+                }
+            }
+            log.debug("Перенесена пачка {}: {} файлов, последний ID: {}", table, ids.size(), afterId);
+        }
+    }
+
+    private void deleteQuietly(String path) {
+        try {
+            fileService.deleteImage(path);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл {}: {}", path, e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ImageUpdater {
+        int replace(Integer id, String oldImage, String newImage);
+    }
+}
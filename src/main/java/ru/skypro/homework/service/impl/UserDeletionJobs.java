@@ -0,0 +1,278 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.dto.UserDeletion;
+import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.event.ImageDeletionEvent;
+import ru.skypro.homework.event.UserChangedEvent;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.CommentRef;
+import ru.skypro.homework.repository.CommentRepository;
+import ru.skypro.homework.repository.ImagePath;
+import ru.skypro.homework.repository.UserRepository;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Фоновые задачи удаления пользователей вместе с их объявлениями и комментариями.
+ *
+ * <p>Удаление выполняется пачками по {@code chunk-size} строк, каждая пачка в своей
+ * короткой транзакции, поэтому пользователь с тысячами объявлений не загружается
+ * в память целиком и не держит блокировки, мешающие остальным запросам.
+ * Порядок шагов:</p>
+ * <ol>
+ *     <li>пароль пользователя заменяется, и он больше не может войти и создавать записи;</li>
+ *     <li>удаляются комментарии пользователя с уменьшением счетчиков объявлений;</li>
+ *     <li>для каждой пачки объявлений пользователя удаляются комментарии к ним,
+ *     затем сами объявления, а их изображения ставятся в очередь удаления;</li>
+ *     <li>удаляется пользователь, его аватар ставится в очередь удаления.</li>
+ * </ol>
+ *
+ * <p>Задачи выполняются по одной. Все шаги можно повторить, поэтому прерванную
+ * задачу достаточно запустить заново. Завершенные задачи хранятся в памяти
+ * в течение {@code retention-minutes} для просмотра результата.</p>
+ *
+ * @author Система управления пользователями
+ * @version 1.0
+ */
+@Slf4j
+@Component
+public class UserDeletionJobs {
+
+    /** Значение пароля, которое не совпадает ни с одним хэшем, поэтому вход невозможен */
+    private static final String LOCKED_PASSWORD = "!deleted";
+
+    private final AdRepository adRepository;
+    private final CommentRepository commentRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final int chunkSize;
+    private final long pauseMs;
+    private final Duration retention;
+
+    public UserDeletionJobs(AdRepository adRepository,
+                            CommentRepository commentRepository,
+                            UserRepository userRepository,
+                            TransactionTemplate transactionTemplate,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${app.users.deletion.chunk-size:500}") int chunkSize,
+                            @Value("${app.users.deletion.pause-ms:50}") long pauseMs,
+                            @Value("${app.users.deletion.queue-capacity:100}") int queueCapacity,
+                            @Value("${app.users.deletion.retention-minutes:1440}") long retentionMinutes) {
+        this.adRepository = adRepository;
+        this.commentRepository = commentRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "user-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Останавливает выполнение задач; незавершенную задачу нужно запустить повторно.
+     */
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Ставит удаление пользователя в очередь.
+     * Если удаление этого пользователя уже выполняется, возвращает существующую задачу.
+     *
+     * @param userId идентификатор пользователя
+     * @return состояние задачи
+     * @throws RejectedExecutionException если очередь задач заполнена
+     */
+    public synchronized UserDeletion submit(Integer userId) {
+        Optional<Job> active = jobs.values().stream()
+                .filter(job -> job.userId.equals(userId) && job.finishedAt == null)
+                .findFirst();
+        if (active.isPresent()) {
+            return active.get().toDto();
+        }
+
+        Instant expired = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(expired));
+
+        Job job = new Job(UUID.randomUUID().toString(), userId);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        log.info("Поставлено в очередь удаление пользователя ID: {}, задача: {}", userId, job.id);
+        return job.toDto();
+    }
+
+    /**
+     * @param jobId идентификатор задачи
+     * @return состояние задачи или пустой результат, если задача неизвестна
+     */
+    public Optional<UserDeletion> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toDto);
+    }
+
+    private void run(Job job) {
+        job.status = "RUNNING";
+        Integer userId = job.userId;
+        log.info("Начато удаление пользователя ID: {}", userId);
+        try {
+            String email = transactionTemplate.execute(status -> {
+                String current = userRepository.findById(userId).map(UserEntity::getEmail).orElse(null);
+                userRepository.replacePassword(userId, LOCKED_PASSWORD);
+                // Закэшированный пароль сбрасывается, иначе пользователь смог бы войти до истечения кэша
+                eventPublisher.publishEvent(new UserChangedEvent(userId, current));
+                return current;
+            });
+            deleteOwnComments(job);
+            deleteAds(job);
+
+            String avatar = transactionTemplate.execute(status -> {
+                String image = userRepository.findById(userId).map(UserEntity::getImage).orElse(null);
+                if (image != null && !image.isEmpty()) {
+                    eventPublisher.publishEvent(ImageDeletionEvent.afterCommit(image));
+                }
+                userRepository.deleteUserById(userId);
+                eventPublisher.publishEvent(new UserChangedEvent(userId, email));
+                return image;
+            });
+            if (avatar != null && !avatar.isEmpty()) {
+                job.imagesQueued.incrementAndGet();
+            }
+
+            job.status = "DONE";
+            log.info("Удален пользователь ID: {}: комментариев {}, объявлений {}, изображений {}",
+                    userId, job.commentsDeleted, job.adsDeleted, job.imagesQueued);
+        } catch (RuntimeException e) {
+            job.status = "FAILED";
+            job.message = e.getMessage();
+            log.error("Удаление пользователя ID: {} прервано: {}", userId, e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.status = "FAILED";
+            job.message = "Приложение остановлено";
+        } finally {
+            job.finishedAt = Instant.now();
+        }
+    }
+
+    private void deleteOwnComments(Job job) throws InterruptedException {
+        while (true) {
+            List<CommentRef> refs = commentRepository.findRefsByAuthor(job.userId, PageRequest.of(0, chunkSize));
+            if (refs.isEmpty()) {
+                return;
+            }
+            // Счетчики обновляются в порядке идентификаторов, чтобы параллельные транзакции не взаимоблокировались
+            Map<Integer, Integer> perAd = new TreeMap<>();
+            refs.forEach(ref -> perAd.merge(ref.getAdId(), 1, Integer::sum));
+            List<Integer> ids = refs.stream().map(CommentRef::getId).collect(Collectors.toList());
+
+            Integer deleted = transactionTemplate.execute(status -> {
+                int count = commentRepository.deleteByIds(ids);
+                perAd.forEach((adId, delta) -> adRepository.adjustCommentCount(adId, -delta));
+                return count;
+            });
+            job.commentsDeleted.addAndGet(deleted != null ? deleted : 0);
+            pause();
+        }
+    }
+
+    private void deleteAds(Job job) throws InterruptedException {
+        while (true) {
+            List<ImagePath> ads = adRepository.findImagePathsByAuthor(job.userId, PageRequest.of(0, chunkSize));
+            if (ads.isEmpty()) {
+                return;
+            }
+            List<Integer> adIds = ads.stream().map(ImagePath::getId).collect(Collectors.toList());
+
+            // Комментарии других пользователей к этим объявлениям удаляются отдельными пачками
+            while (true) {
+                List<Integer> commentIds = commentRepository.findIdsByAdIds(adIds, PageRequest.of(0, chunkSize));
+                if (commentIds.isEmpty()) {
+                    break;
+                }
+                Integer deleted = transactionTemplate.execute(status -> commentRepository.deleteByIds(commentIds));
+                job.commentsDeleted.addAndGet(deleted != null ? deleted : 0);
+                pause();
+            }
+
+            List<String> images = ads.stream()
+                    .map(ImagePath::getImage)
+                    .filter(image -> image != null && !image.isEmpty())
+                    .collect(Collectors.toList());
+            transactionTemplate.executeWithoutResult(status -> {
+                // Комментарии, добавленные после выборки, удаляются в той же транзакции
+                job.commentsDeleted.addAndGet(commentRepository.deleteByAdIds(adIds));
+                job.adsDeleted.addAndGet(adRepository.deleteByIds(adIds));
+                images.forEach(image -> eventPublisher.publishEvent(ImageDeletionEvent.afterCommit(image)));
+            });
+            job.imagesQueued.addAndGet(images.size());
+            pause();
+        }
+    }
+
+    // Пауза между пачками оставляет базу данных остальным запросам
+    private void pause() throws InterruptedException {
+        if (pauseMs > 0) {
+            Thread.sleep(pauseMs);
+        }
+    }
+
+    /**
+     * Состояние одной задачи удаления.
+     */
+    private static final class Job {
+        final String id;
+        final Integer userId;
+        final Instant createdAt = Instant.now();
+        final AtomicLong commentsDeleted = new AtomicLong();
+        final AtomicLong adsDeleted = new AtomicLong();
+        final AtomicLong imagesQueued = new AtomicLong();
+        volatile String status = "QUEUED";
+        volatile String message;
+        volatile Instant finishedAt;
+
+        Job(String id, Integer userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+
+        UserDeletion toDto() {
+            Instant finished = finishedAt;
+            return new UserDeletion(id, userId, status, commentsDeleted.get(), adsDeleted.get(), imagesQueued.get(),
+                    createdAt.toEpochMilli(), finished != null ? finished.toEpochMilli() : null, message);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ru.skypro.homework.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.skypro.homework.config.ReplicaRoutingDataSource;
+import ru.skypro.homework.dto.UserSnapshot;
+import ru.skypro.homework.event.UserChangedEvent;
+import ru.skypro.homework.exception.NotFoundException;
+import ru.skypro.homework.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Локальный кэш пользователей по email.
+ *
+ * <p>Поиск пользователя по email выполняется почти в каждом запросе: при проверке
+ * пароля, при проверке прав и при определении автора. Кэш хранит неизменяемые
+ * снимки {@link UserSnapshot} по email, приведенному к нижнему регистру, поэтому
+ * email сравнивается без учета регистра. Отсутствующие пользователи не кэшируются,
+ * чтобы только что зарегистрированный пользователь сразу мог войти.</p>
+ *
+ * <p>Запись сбрасывается после фиксации транзакции, изменившей пользователя на этом
+ * узле ({@link UserChangedEvent}); на остальных узлах устаревший снимок, в том числе
+ * старый хэш пароля, живет не дольше {@code ttl-seconds}. Метрики публикуются как
+ * {@code cache.*} с тегом {@code cache=userLookup}.</p>
+ *
+ * @author Система управления пользователями
+ * @version 1.0
+ */
+@Component
+public class UserLookupCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, UserSnapshot> cache;
+
+    public UserLookupCache(UserRepository userRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.users.lookup-cache.ttl-seconds:60}") long ttlSeconds,
+                           @Value("${app.users.lookup-cache.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userLookup");
+    }
+
+    /**
+     * Находит пользователя по email; при промахе загружает его из базы данных.
+     *
+     * @param email email пользователя
+     * @return снимок пользователя или пустой результат, если пользователь не найден
+     */
+    public Optional<UserSnapshot> find(String email) {
+        if (email == null || email.isBlank()) {
+            return Optional.empty();
+        }
+        String key = normalize(email);
+        if (ReplicaRoutingDataSource.isReplicaInUse()) {
+            // Транзакция уже читает с реплики, и прочитанный снимок может отставать: он не кэшируется
+            UserSnapshot cached = cache.getIfPresent(key);
+            return cached != null ? Optional.of(cached) : userRepository.findByNormalizedEmail(key).map(UserSnapshot::of);
+        }
+        // Снимок живет до ttl-seconds, поэтому читается с основного сервера, а не с отстающей реплики
+        return Optional.ofNullable(cache.get(key, missing -> ReplicaRoutingDataSource.usePrimary(() ->
+                userRepository.findByNormalizedEmail(missing).map(UserSnapshot::of).orElse(null))));
+    }
+
+    /**
+     * Находит пользователя по email.
+     *
+     * @param email email пользователя
+     * @return снимок пользователя
+     * @throws NotFoundException если пользователь не найден
+     */
+    public UserSnapshot get(String email) {
+        return find(email).orElseThrow(() -> new NotFoundException("Пользователь не найден: " + email));
+    }
+
+    /**
+     * Сбрасывает запись пользователя.
+     *
+     * @param email email пользователя
+     */
+    public void invalidate(String email) {
+        if (email != null) {
+            cache.invalidate(normalize(email));
+        }
+    }
+
+    /**
+     * Сбрасывает запись после фиксации транзакции, изменившей пользователя.
+     *
+     * @param event событие изменения пользователя
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(event.getEmail());
+    }
+
+    static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
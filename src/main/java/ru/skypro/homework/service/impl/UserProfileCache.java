@@ -0,0 +1,74 @@
+package ru.skypro.homework.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.skypro.homework.dto.UserProfile;
+import ru.skypro.homework.event.UserChangedEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Локальный кэш публичных профилей пользователей для отрисовки объявлений и комментариев.
+ * Профиль сбрасывается после фиксации транзакции, изменившей его на этом узле
+ * ({@link UserChangedEvent}); на остальных узлах устаревший профиль
+ * живет не дольше {@code ttl-seconds}.
+ *
+ * <p>Метрики публикуются как {@code cache.*} с тегом {@code cache=userProfiles}.</p>
+ *
+ * @author Система управления пользователями
+ * @version 1.0
+ */
+@Component
+public class UserProfileCache {
+
+    private final Cache<Integer, UserProfile> cache;
+
+    public UserProfileCache(MeterRegistry meterRegistry,
+                            @Value("${app.users.profile-cache.ttl-seconds:60}") long ttlSeconds,
+                            @Value("${app.users.profile-cache.max-size:10000}") long maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userProfiles");
+    }
+
+    /**
+     * Возвращает профили из кэша, а отсутствующие загружает одним вызовом загрузчика.
+     * Пользователи, которых нет в ответе загрузчика, в результат не попадают и не кэшируются.
+     *
+     * @param ids    идентификаторы пользователей
+     * @param loader загрузчик недостающих профилей
+     * @return найденные профили по идентификаторам
+     */
+    public Map<Integer, UserProfile> getAll(Collection<Integer> ids,
+                                            Function<Set<Integer>, Map<Integer, UserProfile>> loader) {
+        return cache.getAll(ids, missing -> {
+            Set<Integer> keys = new HashSet<>();
+            missing.forEach(keys::add);
+            return loader.apply(keys);
+        });
+    }
+
+    /**
+     * Сбрасывает профиль после фиксации транзакции, изменившей его.
+     *
+     * @param event событие изменения пользователя
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        cache.invalidate(event.getUserId());
+    }
+}
@@ -2,28 +2,48 @@ package ru.skypro.homework.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.dto.NewPassword;
 import ru.skypro.homework.dto.UpdateUser;
 import ru.skypro.homework.dto.User;
+import ru.skypro.homework.dto.UserDeletion;
+import ru.skypro.homework.dto.UserProfile;
+import ru.skypro.homework.dto.UserSnapshot;
 import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.event.ImageDeletionEvent;
+import ru.skypro.homework.event.UserChangedEvent;
 import ru.skypro.homework.exception.BadRequestException;
 import ru.skypro.homework.exception.ForbiddenException;
 import ru.skypro.homework.exception.NotFoundException;
 import ru.skypro.homework.mapper.UserMapper;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.service.UserService;
-
-import java.io.IOException;
+import ru.skypro.homework.validation.InputValidator;
+
+import java.nio.file.NoSuchFileException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * Сервис для работы с пользователями.
  * Обеспечивает управление профилем пользователя, включая обновление данных,
  * изменение пароля, управление аватаром и получение информации о пользователе.
+ * Файлы аватаров читаются и пишутся вне транзакций, в пуле потоков ввода-вывода,
+ * чтобы не занимать соединение с базой данных и потоки Tomcat.
  *
  * @author Система управления пользователями
  * @version 1.0
@@ -38,6 +58,15 @@ public class UserServiceImpl implements UserService {
     private final UserMapper userMapper;
     private final PasswordEncoder passwordEncoder;
     private final FileService fileService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MissingImageCache missingImages;
+    private final UserDeletionJobs userDeletionJobs;
+    private final UserProfileCache userProfiles;
+    private final UserLookupCache userLookupCache;
+
+    /** Максимальное число профилей в одном запросе */
+    private static final int MAX_PROFILE_IDS = 100;
 
     /**
      * Получает информацию о текущем аутентифицированном пользователе.
@@ -47,13 +76,13 @@ public class UserServiceImpl implements UserService {
      * @throws NotFoundException если пользователь не найден
      */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public User getCurrentUser(Authentication authentication) {
         String email = authentication.getName();
-        UserEntity userEntity = userRepository.findByEmail(email)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + email));
+        UserSnapshot user = userLookupCache.get(email);
 
-        log.info("Получена информация о пользователе: {}", email);
-        return userMapper.toDto(userEntity);
+        log.debug("Получена информация о пользователе: {}", email);
+        return userMapper.toDto(user);
     }
 
     /**
@@ -72,24 +101,11 @@ public class UserServiceImpl implements UserService {
         UserEntity userEntity = userRepository.findByEmail(email)
                 .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + email));
 
-        // Валидация входных данных
-        if (updateUser.getFirstName() != null &&
-                (updateUser.getFirstName().length() < 3 || updateUser.getFirstName().length() > 10)) {
-            throw new BadRequestException("Имя должно быть от 3 до 10 символов");
-        }
-
-        if (updateUser.getLastName() != null &&
-                (updateUser.getLastName().length() < 3 || updateUser.getLastName().length() > 10)) {
-            throw new BadRequestException("Фамилия должна быть от 3 до 10 символов");
-        }
-
-        if (updateUser.getPhone() != null &&
-                !updateUser.getPhone().matches("\\+7\\s?\\(?\\d{3}\\)?\\s?\\d{3}-?\\d{2}-?\\d{2}")) {
-            throw new BadRequestException("Номер телефона должен соответствовать формату: +7 XXX XXX-XX-XX");
-        }
+        InputValidator.validateUserUpdate(updateUser);
 
         userMapper.updateEntity(updateUser, userEntity);
         UserEntity savedEntity = userRepository.save(userEntity);
+        eventPublisher.publishEvent(new UserChangedEvent(savedEntity.getId(), savedEntity.getEmail()));
 
         // Возвращаем обновленные данные
         UpdateUser result = new UpdateUser();
@@ -140,6 +156,7 @@ public class UserServiceImpl implements UserService {
         String encodedNewPassword = passwordEncoder.encode(newPassword.getNewPassword());
         userEntity.setPassword(encodedNewPassword);
         userRepository.save(userEntity);
+        eventPublisher.publishEvent(new UserChangedEvent(userEntity.getId(), userEntity.getEmail()));
 
         log.info("Пароль пользователя изменен: {}", email);
     }
@@ -147,80 +164,180 @@ public class UserServiceImpl implements UserService {
     /**
      * Обновляет аватар текущего пользователя.
      * Проверяет тип и размер файла перед сохранением.
-     * Удаляет старый аватар, если он существует.
+     * Старый аватар, если он существует, удаляется в фоне после фиксации транзакции.
      *
      * @param image          файл с новым аватаром
      * @param authentication объект аутентификации текущего пользователя
-     * @throws IOException         если произошла ошибка при работе с файлом
+     * @return результат обновления; при ошибке работы с файлом завершается
+     *         исключением с {@link java.io.IOException} в качестве причины
      * @throws NotFoundException   если пользователь не найден
      * @throws BadRequestException если файл не прошел валидацию
      */
     @Override
-    public void updateUserImage(MultipartFile image, Authentication authentication) throws IOException {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Void> updateUserImage(MultipartFile image, Authentication authentication) {
         String email = authentication.getName();
-        UserEntity userEntity = userRepository.findByEmail(email)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + email));
+        // Проверяем, что пользователь существует
+        userLookupCache.get(email);
 
         if (image == null || image.isEmpty()) {
             throw new BadRequestException("Файл изображения отсутствует или пуст");
         }
 
-        // Проверяем тип файла
-        String contentType = image.getContentType();
-        if (contentType == null ||
-                (!contentType.equals("image/jpeg") && !contentType.equals("image/png") &&
-                        !contentType.equals("image/jpg"))) {
-            throw new BadRequestException("Разрешены только изображения в формате JPEG, JPG или PNG");
-        }
+        // Тип файла проверяется в FileService по сигнатуре содержимого,
+        // заголовку Content-Type от клиента не доверяем
 
         // Проверяем размер файла (10MB)
         if (image.getSize() > 10 * 1024 * 1024) {
             throw new BadRequestException("Размер файла не должен превышать 10MB");
         }
 
-        // Сохраняем изображение
-        String imagePath = fileService.saveImage(image, "users");
-
-        // Удаляем старое изображение, если оно существует
-        if (userEntity.getImage() != null && !userEntity.getImage().isEmpty()) {
+        // Сохраняем изображение вне транзакции, в пуле потоков ввода-вывода
+        return fileService.saveImageAsync(image, "users").thenAccept(imagePath -> {
+            Integer userId;
             try {
-                fileService.deleteImage(userEntity.getImage());
-            } catch (IOException e) {
-                log.error("Ошибка при удалении старого изображения пользователя {}: {}", email, e.getMessage());
+                userId = transactionTemplate.execute(status -> {
+                    // Если транзакция откатится, файл будет удален
+                    eventPublisher.publishEvent(ImageDeletionEvent.afterRollback(imagePath));
+
+                    UserEntity userEntity = userRepository.findByEmail(email)
+                            .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + email));
+
+                    // Старое изображение удаляется в фоне после фиксации транзакции
+                    if (userEntity.getImage() != null && !userEntity.getImage().isEmpty()) {
+                        eventPublisher.publishEvent(ImageDeletionEvent.afterCommit(userEntity.getImage()));
+                    }
+
+                    // Обновляем путь к изображению
+                    userEntity.setImage(imagePath);
+                    userRepository.save(userEntity);
+                    eventPublisher.publishEvent(new UserChangedEvent(userEntity.getId(), userEntity.getEmail()));
+                    return userEntity.getId();
+                });
+            } catch (CannotCreateTransactionException e) {
+                // Транзакция не началась, события отката не будет: файл ставится в очередь сразу.
+                // Откат удаляет файл по событию из транзакции, а после фиксации на файл уже ссылается запись
+                eventPublisher.publishEvent(ImageDeletionEvent.afterCommit(imagePath));
+                throw e;
             }
-        }
 
-        // Обновляем путь к изображению
-        userEntity.setImage(imagePath);
-        userRepository.save(userEntity);
-
-        log.info("Аватар пользователя обновлен: {}", email);
+            // Сбрасываем отрицательный результат только после фиксации
+            missingImages.invalidate("users", userId);
+            log.info("Аватар пользователя обновлен: {}", email);
+        });
     }
 
     /**
      * Получает аватар пользователя по его идентификатору.
+     * У большинства пользователей аватара нет, поэтому этот случай не считается ошибкой:
+     * возвращается пустой массив, а результат на короткое время запоминается
+     * в {@link MissingImageCache}, и повторные запросы не обращаются к базе.
      *
      * @param userId идентификатор пользователя
-     * @return массив байтов изображения аватара
-     * @throws NotFoundException   если пользователь или аватар не найдены
+     * @return массив байтов изображения аватара, прочитанный в пуле потоков ввода-вывода,
+     *         или пустой массив, если аватара нет
+     * @throws NotFoundException   если пользователь не найден
      * @throws BadRequestException если произошла ошибка при загрузке изображения
      */
     @Override
-    public byte[] getUserImage(Integer userId) {
-        UserEntity userEntity = userRepository.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + userId));
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<byte[]> getUserImage(Integer userId) {
+        if (missingImages.isMissing("users", userId)) {
+            return CompletableFuture.completedFuture(new byte[0]);
+        }
+        long generation = missingImages.generation("users", userId);
+
+        String imagePath = userRepository.findById(userId)
+                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + userId))
+                .getImage();
 
-        if (userEntity.getImage() == null || userEntity.getImage().isEmpty()) {
-            log.warn("Аватар пользователя с ID {} не найден", userId);
-            throw new NotFoundException("Аватар пользователя не найден");
+        if (imagePath == null || imagePath.isEmpty()) {
+            log.debug("У пользователя с ID {} нет аватара", userId);
+            missingImages.markMissing("users", userId, generation);
+            return CompletableFuture.completedFuture(new byte[0]);
         }
 
-        try {
-            return fileService.loadImage(userEntity.getImage());
-        } catch (IOException e) {
-            log.error("Ошибка при чтении аватара пользователя {}: {}", userId, e.getMessage());
-            throw new BadRequestException("Не удалось загрузить изображение: " + e.getMessage());
+        return fileService.loadImageAsync(imagePath)
+                .exceptionally(e -> {
+                    Throwable cause = FileService.unwrap(e);
+                    log.error("Ошибка при чтении аватара пользователя {}: {}", userId, cause.getMessage());
+                    // Файла нет: отвечаем 404, как для пользователя без аватара
+                    if (cause instanceof NoSuchFileException) {
+                        missingImages.markMissing("users", userId, generation);
+                        return new byte[0];
+                    }
+                    throw new BadRequestException("Не удалось загрузить изображение: " + cause.getMessage());
+                });
+    }
+
+    /**
+     * Ставит в очередь фоновое удаление пользователя, см. {@link UserDeletionJobs}.
+     * Администратор не может удалить сам себя.
+     *
+     * @param userId         идентификатор удаляемого пользователя
+     * @param authentication объект аутентификации администратора
+     * @return {@link UserDeletion} состояние задачи удаления
+     * @throws NotFoundException   если пользователь не найден
+     * @throws ForbiddenException  если текущий пользователь не администратор
+     * @throws BadRequestException если администратор пытается удалить себя
+     * @throws java.util.concurrent.RejectedExecutionException если очередь задач удаления заполнена
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public UserDeletion deleteUser(Integer userId, Authentication authentication) {
+        UserSnapshot currentUser = userLookupCache.get(authentication.getName());
+        if (!currentUser.isAdmin()) {
+            throw new ForbiddenException("Удалять пользователей может только администратор");
+        }
+        if (currentUser.getId().equals(userId)) {
+            throw new BadRequestException("Администратор не может удалить сам себя");
+        }
+        if (!userRepository.existsById(userId)) {
+            throw new NotFoundException("Пользователь не найден с ID: " + userId);
         }
+        return userDeletionJobs.submit(userId);
+    }
+
+    /**
+     * Возвращает состояние задачи удаления пользователя.
+     *
+     * @param jobId идентификатор задачи
+     * @return {@link UserDeletion} состояние задачи удаления
+     * @throws NotFoundException если задача не найдена
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UserDeletion getUserDeletion(String jobId) {
+        return userDeletionJobs.find(jobId)
+                .orElseThrow(() -> new NotFoundException("Задача удаления не найдена: " + jobId));
+    }
+
+    /**
+     * Возвращает публичные профили пользователей для отрисовки объявлений и комментариев.
+     * Профили берутся из {@link UserProfileCache}, недостающие загружаются одним запросом.
+     * Несуществующие пользователи пропускаются.
+     *
+     * @param ids идентификаторы пользователей (не более {@value #MAX_PROFILE_IDS})
+     * @return профили в порядке запроса, без повторов
+     * @throws BadRequestException если идентификаторы не заданы или их слишком много
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<UserProfile> getUserProfiles(List<Integer> ids) {
+        Set<Integer> unique = ids == null ? Collections.emptySet() : new LinkedHashSet<>(ids);
+        unique.remove(null);
+        if (unique.isEmpty() || unique.size() > MAX_PROFILE_IDS) {
+            throw new BadRequestException("Нужно указать от 1 до " + MAX_PROFILE_IDS + " идентификаторов пользователей");
+        }
+
+        Map<Integer, UserProfile> profiles = userProfiles.getAll(unique, missing ->
+                userRepository.findAllById(missing).stream()
+                        .collect(Collectors.toMap(UserEntity::getId, userMapper::toProfile)));
+
+        return unique.stream()
+                .map(profiles::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -230,8 +347,9 @@ public class UserServiceImpl implements UserService {
      * @return true - если пользователь существует, false - в противном случае
      */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean userExists(String email) {
-        return userRepository.existsByEmail(email);
+        return userLookupCache.find(email).isPresent();
     }
 
     /**
@@ -242,6 +360,7 @@ public class UserServiceImpl implements UserService {
      * @throws NotFoundException если пользователь не найден
      */
     @Override
+    @Transactional(readOnly = true)
     public UserEntity getUserByEmail(String email) {
         return userRepository.findByEmail(email)
                 .orElseThrow(() -> new NotFoundException("Пользователь не найден: " + email));
@@ -0,0 +1,257 @@
+package ru.skypro.homework.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище изображений в локальной файловой системе.
+ * Используется по умолчанию ({@code app.storage.type=filesystem}).
+ * Корневой каталог задается свойством {@code app.storage.filesystem.root}.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemImageStore implements ImageStore {
+
+    private final Path rootLocation;
+
+    public FileSystemImageStore(@Value("${app.storage.filesystem.root:uploads}") String root) {
+        this.rootLocation = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Пишет во временный файл рядом с итоговым и атомарно переносит его,
+     * так что читатели не видят недописанных файлов.
+     */
+    @Override
+    public void save(String key, InputStream content, long size) throws IOException {
+        Path destination = resolve(key);
+
+        // Создаем директорию, если она не существует
+        Path directory = destination.getParent();
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory);
+        }
+
+        Path temp = Files.createTempFile(directory, ".upload-", ".tmp");
+        try {
+            Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public byte[] load(String key) throws IOException {
+        Path filePath = resolve(key);
+        if (!Files.exists(filePath)) {
+            throw new NoSuchFileException(filePath.toString(), null, "Файл не найден");
+        }
+        return Files.readAllBytes(filePath);
+    }
+
+    /**
+     * Читает файл через {@link AsynchronousFileChannel}, который выполняет
+     * чтение в переданном пуле; поток запроса при этом не блокируется даже на открытии файла.
+     */
+    @Override
+    public CompletableFuture<byte[]> loadAsync(String key, ExecutorService executor) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            AsynchronousFileChannel channel = null;
+            try {
+                channel = AsynchronousFileChannel.open(resolve(key), Set.of(StandardOpenOption.READ), executor);
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE - 8) {
+                    throw new IOException("Файл слишком большой: " + key);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                // Если пул переполнен, read сразу бросает RejectedExecutionException
+                // и обработчик не вызывается; канал закрывается ниже
+                channel.read(buffer, 0, buffer, new ReadHandler(channel, result));
+            } catch (NoSuchFileException e) {
+                result.completeExceptionally(new CompletionException(
+                        new NoSuchFileException(key, null, "Файл не найден")));
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(channel);
+                result.completeExceptionally(new CompletionException(e));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public InputStream stream(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return Files.exists(resolve(key));
+    }
+
+    /**
+     * Обходит дерево каталогов. Каталоги и файлы, имена которых начинаются с точки
+     * (временные файлы загрузок, сегменты {@link PackFileImageStore}), пропускаются.
+     */
+    @Override
+    public void list(Consumer<StoredImage> consumer) throws IOException {
+        if (!Files.exists(rootLocation)) {
+            return;
+        }
+        Files.walkFileTree(rootLocation, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(rootLocation) && isHidden(dir)
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !isHidden(file)) {
+                    String key = rootLocation.relativize(file).toString()
+                            .replace(file.getFileSystem().getSeparator(), "/");
+                    consumer.accept(new StoredImage(key, attrs.size(), attrs.lastModifiedTime().toInstant()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Файл мог быть удален во время обхода
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Создает жесткую ссылку, поэтому данные не копируются;
+     * если файловая система ее не поддерживает, файл копируется.
+     * Время изменения обновляется, чтобы новый путь, еще не сохраненный в базе,
+     * не считался забытым файлом.
+     */
+    @Override
+    public void link(String sourceKey, String targetKey) throws IOException {
+        Path source = resolve(sourceKey);
+        Path target = resolve(targetKey);
+        Files.createDirectories(target.getParent());
+        if (Files.exists(target)) {
+            return;
+        }
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(source, target);
+        }
+        Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+    }
+
+    @Override
+    public void init() throws IOException {
+        if (!Files.exists(rootLocation)) {
+            Files.createDirectories(rootLocation);
+            log.info("Создана корневая директория для загрузок: {}", rootLocation);
+        }
+    }
+
+    /**
+     * Дочитывает файл до конца последовательными асинхронными чтениями.
+     */
+    private static final class ReadHandler implements CompletionHandler<Integer, ByteBuffer> {
+        private final AsynchronousFileChannel channel;
+        private final CompletableFuture<byte[]> result;
+
+        ReadHandler(AsynchronousFileChannel channel, CompletableFuture<byte[]> result) {
+            this.channel = channel;
+            this.result = result;
+        }
+
+        @Override
+        public void completed(Integer read, ByteBuffer buffer) {
+            if (read >= 0 && buffer.hasRemaining()) {
+                try {
+                    channel.read(buffer, buffer.position(), buffer, this);
+                } catch (RuntimeException e) {
+                    failed(e, buffer);
+                }
+                return;
+            }
+            closeQuietly(channel);
+            // Если файл укоротился во время чтения, возвращаем прочитанное
+            result.complete(buffer.hasRemaining()
+                    ? Arrays.copyOf(buffer.array(), buffer.position())
+                    : buffer.array());
+        }
+
+        @Override
+        public void failed(Throwable e, ByteBuffer buffer) {
+            closeQuietly(channel);
+            result.completeExceptionally(new CompletionException(e));
+        }
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Не удалось закрыть файл после чтения: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * Преобразует ключ в путь внутри корневого каталога.
+     * Ключи, выходящие за пределы корня (например, с "..") отклоняются.
+     */
+    private Path resolve(String key) throws IOException {
+        Path path = rootLocation.resolve(key).normalize();
+        if (!path.startsWith(rootLocation) || path.equals(rootLocation)) {
+            throw new IOException("Некорректный путь к файлу: " + key);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,125 @@
+package ru.skypro.homework.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище содержимого изображений.
+ * Изображения адресуются ключами вида {@code ads/ab/cd/имя.jpg}; ключ совпадает
+ * с путем, который хранится в базе данных, без начального слэша.
+ * Реализация выбирается свойством {@code app.storage.type}; выбранная реализация
+ * помечена как основная, потому что хранилище маленьких изображений тоже реализует этот интерфейс.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ *
+ * @see FileSystemImageStore
+ * @see InMemoryImageStore
+ * @see S3ImageStore
+ * @see PackFileImageStore
+ */
+public interface ImageStore {
+
+    /**
+     * Сохраняет содержимое под указанным ключом.
+     * Содержимое становится видимым для чтения только целиком.
+     *
+     * @param key     ключ изображения
+     * @param content поток с содержимым, читается до конца
+     * @param size    размер содержимого в байтах
+     * @throws IOException при ошибке записи
+     */
+    void save(String key, InputStream content, long size) throws IOException;
+
+    /**
+     * Загружает содержимое целиком.
+     *
+     * @param key ключ изображения
+     * @return содержимое изображения
+     * @throws java.nio.file.NoSuchFileException если изображения нет
+     * @throws IOException                       при ошибке чтения
+     */
+    byte[] load(String key) throws IOException;
+
+    /**
+     * Загружает содержимое целиком, не блокируя вызывающий поток.
+     * По умолчанию {@link #load(String)} выполняется в переданном пуле;
+     * реализации могут читать данные средствами асинхронного ввода-вывода.
+     *
+     * @param key      ключ изображения
+     * @param executor пул потоков ввода-вывода
+     * @return будущее содержимое; при ошибке завершается {@link CompletionException}
+     *         с {@link IOException} в качестве причины
+     */
+    default CompletableFuture<byte[]> loadAsync(String key, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(key);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Открывает поток для чтения содержимого. Поток закрывает вызывающий код.
+     *
+     * @param key ключ изображения
+     * @return поток с содержимым
+     * @throws java.nio.file.NoSuchFileException если изображения нет
+     * @throws IOException                       при ошибке чтения
+     */
+    InputStream stream(String key) throws IOException;
+
+    /**
+     * Удаляет изображение, если оно существует.
+     *
+     * @param key ключ изображения
+     * @return true, если изображение было удалено
+     * @throws IOException при ошибке удаления
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * @param key ключ изображения
+     * @return true, если изображение существует
+     * @throws IOException при ошибке обращения к хранилищу
+     */
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Обходит все изображения в хранилище, не загружая список целиком в память.
+     * Служебные файлы хранилища в обход не попадают. Изображения, сохраненные
+     * или удаленные во время обхода, могут как попасть в него, так и нет.
+     *
+     * @param consumer получатель сведений об изображениях
+     * @throws IOException при ошибке обращения к хранилищу
+     */
+    void list(Consumer<StoredImage> consumer) throws IOException;
+
+    /**
+     * Делает содержимое доступным под вторым ключом, не удаляя исходное.
+     * Реализации могут переопределить метод, чтобы обойтись без копирования данных.
+     *
+     * @param sourceKey существующий ключ
+     * @param targetKey новый ключ
+     * @throws IOException если исходного изображения нет или запись не удалась
+     */
+    default void link(String sourceKey, String targetKey) throws IOException {
+        byte[] content = load(sourceKey);
+        save(targetKey, new ByteArrayInputStream(content), content.length);
+    }
+
+    /**
+     * Подготавливает хранилище к работе при запуске приложения.
+     *
+     * @throws IOException если хранилище недоступно
+     */
+    default void init() throws IOException {
+    }
+}
@@ -0,0 +1,84 @@
+package ru.skypro.homework.storage;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище изображений в памяти процесса ({@code app.storage.type=memory}).
+ * Предназначено для тестов и нагрузочных замеров, где диск не должен влиять на результат.
+ * Содержимое теряется при перезапуске приложения.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "memory")
+public class InMemoryImageStore implements ImageStore {
+
+    private final Map<String, byte[]> images = new ConcurrentHashMap<>();
+    private final Map<String, Instant> savedAt = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(String key, InputStream content, long size) throws IOException {
+        // Кладем в карту только полностью прочитанное содержимое
+        images.put(key, content.readAllBytes());
+        savedAt.put(key, Instant.now());
+    }
+
+    @Override
+    public byte[] load(String key) throws IOException {
+        byte[] content = images.get(key);
+        if (content == null) {
+            throw new NoSuchFileException(key, null, "Файл не найден");
+        }
+        return content.clone();
+    }
+
+    @Override
+    public InputStream stream(String key) throws IOException {
+        byte[] content = images.get(key);
+        if (content == null) {
+            throw new NoSuchFileException(key, null, "Файл не найден");
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        savedAt.remove(key);
+        return images.remove(key) != null;
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return images.containsKey(key);
+    }
+
+    @Override
+    public void list(Consumer<StoredImage> consumer) {
+        images.forEach((key, content) ->
+                consumer.accept(new StoredImage(key, content.length, savedAt.getOrDefault(key, Instant.now()))));
+    }
+
+    @Override
+    public void link(String sourceKey, String targetKey) throws IOException {
+        byte[] content = images.get(sourceKey);
+        if (content == null) {
+            throw new NoSuchFileException(sourceKey, null, "Файл не найден");
+        }
+        if (images.putIfAbsent(targetKey, content) == null) {
+            savedAt.put(targetKey, Instant.now());
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package ru.skypro.homework.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище маленьких изображений (в основном аватаров) в больших файлах-сегментах.
+ * Включается свойством {@code app.storage.pack.enabled=true}; FileService направляет
+ * сюда изображения не больше {@code app.storage.pack.max-image-size} байт.
+ *
+ * <p>Изображения дописываются в конец активного сегмента, а их положение
+ * записывается в журнал индекса, который при запуске загружается в память.
+ * Чтение выполняется из отображенных в память сегментов без открытия файлов.
+ * Удаление помечает запись в индексе; фоновый компактор переписывает живые записи
+ * из сегментов, где много удаленных данных, и удаляет эти сегменты.</p>
+ *
+ * <p>При {@code app.storage.pack.fsync-interval-ms=0} запись подтверждается только после
+ * сброса сегмента и журнала индекса на диск. При положительном значении они сбрасываются
+ * с этим периодом, и при сбое питания теряются изображения, записанные за последний период.
+ * Запись, оборванная сбоем в конце сегмента, отбрасывается при запуске.</p>
+ *
+ * <p>Формат записи в сегменте: длина ключа (int), ключ в UTF-8, длина данных (int),
+ * данные, CRC32 данных (int). Формат записи в журнале индекса: операция (byte),
+ * длина ключа (short), ключ, а для операции PUT еще номер сегмента (int),
+ * смещение данных (long) и их длина (int).</p>
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.storage.pack.enabled", havingValue = "true")
+public class PackFileImageStore implements ImageStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".pack";
+    private static final String INDEX_FILE = "index.log";
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long maxImageSize;
+    private final double compactionThreshold;
+    private final long compactionIntervalSeconds;
+    private final long fsyncIntervalMillis;
+
+    /** Положение каждого живого изображения */
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    /** Отображения сегментов в память для чтения */
+    private final Map<Integer, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+    /** Объем всех и удаленных записей по сегментам, изменяется под блокировкой записи */
+    private final Map<Integer, SegmentStats> stats = new ConcurrentHashMap<>();
+
+    /** Уплотнение и периодический сброс на диск; сброс не ждет окончания уплотнения */
+    private final ScheduledExecutorService maintenance = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "pack-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Не допускает одновременного уплотнения по расписанию и по вызову */
+    private final Object compactionLock = new Object();
+
+    // Читаются и изменяются только под блокировкой this
+    private FileChannel indexChannel;
+    private FileChannel activeChannel;
+    private int activeSegment;
+
+    public PackFileImageStore(@Value("${app.storage.pack.directory:uploads/.pack}") String directory,
+                              @Value("${app.storage.pack.segment-size:67108864}") long segmentSize,
+                              @Value("${app.storage.pack.max-image-size:65536}") long maxImageSize,
+                              @Value("${app.storage.pack.compaction-threshold:0.5}") double compactionThreshold,
+                              @Value("${app.storage.pack.compaction-interval-seconds:600}") long compactionIntervalSeconds,
+                              @Value("${app.storage.pack.fsync-interval-ms:0}") long fsyncIntervalMillis) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.segmentSize = segmentSize;
+        this.maxImageSize = maxImageSize;
+        this.compactionThreshold = compactionThreshold;
+        this.compactionIntervalSeconds = compactionIntervalSeconds;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    /**
+     * @param size размер изображения в байтах
+     * @return true, если изображение достаточно маленькое для хранения в сегментах
+     */
+    public boolean accepts(long size) {
+        return size >= 0 && size <= maxImageSize;
+    }
+
+    /**
+     * Загружает индекс, открывает активный сегмент и запускает компактор.
+     *
+     * @throws IOException если каталог или файлы хранилища недоступны
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+
+        for (Integer segment : listSegments()) {
+            stats.put(segment, new SegmentStats(Files.size(segmentPath(segment))));
+            activeSegment = Math.max(activeSegment, segment);
+        }
+        if (activeSegment > 0) {
+            // Предыдущие сегменты сброшены на диск при переходе к следующему
+            stats.get(activeSegment).total = recoverTail(activeSegment);
+        }
+
+        replayIndex();
+        for (Entry entry : index.values()) {
+            SegmentStats segmentStats = stats.get(entry.segment);
+            if (segmentStats != null) {
+                segmentStats.live += entry.recordSize;
+            }
+        }
+
+        indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (activeSegment == 0) {
+            activeSegment = 1;
+            stats.put(activeSegment, new SegmentStats(0));
+        }
+        activeChannel = openSegmentForAppend(activeSegment);
+
+        maintenance.scheduleWithFixedDelay(this::compactQuietly,
+                compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+        if (fsyncIntervalMillis > 0) {
+            maintenance.scheduleWithFixedDelay(this::forceQuietly,
+                    fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        log.info("Открыто хранилище маленьких изображений {}: {} изображений в {} сегментах",
+                directory, index.size(), stats.size());
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        maintenance.shutdownNow();
+        if (activeChannel != null) {
+            activeChannel.force(false);
+            activeChannel.close();
+        }
+        if (indexChannel != null) {
+            indexChannel.force(false);
+            indexChannel.close();
+        }
+    }
+
+    @Override
+    public void save(String key, InputStream content, long size) throws IOException {
+        byte[] data = content.readAllBytes();
+        append(key, data);
+    }
+
+    @Override
+    public byte[] load(String key) throws IOException {
+        // Если компактор перенес запись между чтением индекса и сегмента, повторяем один раз
+        for (int attempt = 0; ; attempt++) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                throw new NoSuchFileException(key, null, "Файл не найден");
+            }
+            try {
+                return read(entry);
+            } catch (NoSuchFileException e) {
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public InputStream stream(String key) throws IOException {
+        return new ByteArrayInputStream(load(key));
+    }
+
+    @Override
+    public synchronized boolean delete(String key) throws IOException {
+        Entry entry = index.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        writeIndexEntry(OP_DELETE, key, null);
+        if (fsyncIntervalMillis <= 0) {
+            indexChannel.force(false);
+        }
+        markDead(entry);
+        return true;
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Время записи изображений в индексе не хранится, поэтому для каждого
+     * изображения возвращается время последнего изменения его сегмента.
+     */
+    @Override
+    public void list(Consumer<StoredImage> consumer) throws IOException {
+        Map<Integer, Instant> modified = new HashMap<>();
+        for (Map.Entry<String, Entry> live : index.entrySet()) {
+            Entry entry = live.getValue();
+            Instant lastModified = modified.get(entry.segment);
+            if (lastModified == null) {
+                try {
+                    lastModified = Files.getLastModifiedTime(segmentPath(entry.segment)).toInstant();
+                } catch (NoSuchFileException e) {
+                    // Сегмент удален компактором, запись уже перенесена в активный сегмент
+                    continue;
+                }
+                modified.put(entry.segment, lastModified);
+            }
+            consumer.accept(new StoredImage(live.getKey(), entry.length, lastModified));
+        }
+    }
+
+    /**
+     * Переписывает живые записи из сегментов, в которых доля удаленных данных
+     * не меньше порога, и удаляет эти сегменты. После этого журнал индекса
+     * заменяется снимком, чтобы он не рос бесконечно.
+     *
+     * <p>Записи читаются без блокировки; блокировка берется только на дописывание
+     * каждой записи в активный сегмент, поэтому уплотнение не останавливает запись.</p>
+     *
+     * @return количество освобожденных байтов
+     * @throws IOException при ошибке чтения или записи сегментов
+     */
+    public long compact() throws IOException {
+        synchronized (compactionLock) {
+            long reclaimed = 0;
+            for (int segment : compactionCandidates()) {
+                reclaimed += compactSegment(segment);
+            }
+            if (reclaimed > 0) {
+                rewriteIndex();
+                log.info("Компактор освободил {} байт в {}", reclaimed, directory);
+            }
+            return reclaimed;
+        }
+    }
+
+    /**
+     * Сбрасывает на диск все подтвержденные записи.
+     *
+     * @throws IOException при ошибке записи
+     */
+    public synchronized void force() throws IOException {
+        activeChannel.force(false);
+        indexChannel.force(false);
+    }
+
+    private synchronized List<Integer> compactionCandidates() {
+        List<Integer> candidates = new ArrayList<>();
+        for (Map.Entry<Integer, SegmentStats> candidate : stats.entrySet()) {
+            SegmentStats segmentStats = candidate.getValue();
+            if (candidate.getKey() != activeSegment && segmentStats.total > 0
+                    && segmentStats.garbage() >= compactionThreshold) {
+                candidates.add(candidate.getKey());
+            }
+        }
+        return candidates;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка при уплотнении сегментов {}: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    private void forceQuietly() {
+        try {
+            force();
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка при сбросе сегментов {} на диск: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Переносит живые записи сегмента в активный сегмент и удаляет его. Новые записи
+     * в неактивный сегмент не попадают, а перезаписанные и удаленные за время
+     * копирования изображения не переносятся.
+     */
+    private long compactSegment(int segment) throws IOException {
+        for (Map.Entry<String, Entry> live : index.entrySet()) {
+            Entry entry = live.getValue();
+            if (entry.segment == segment) {
+                byte[] data = read(entry);
+                synchronized (this) {
+                    if (index.get(live.getKey()) == entry) {
+                        append(live.getKey(), data);
+                    }
+                }
+            }
+        }
+        return dropSegment(segment);
+    }
+
+    private synchronized long dropSegment(int segment) throws IOException {
+        // Перенесенные записи должны пережить сбой раньше, чем будет удален их источник
+        force();
+        SegmentStats removed = stats.remove(segment);
+        mappings.remove(segment);
+        // Уже выданные отображения остаются действительными и после удаления файла
+        Files.deleteIfExists(segmentPath(segment));
+        return removed.total - removed.live;
+    }
+
+    private synchronized void append(String key, byte[] data) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordSize = 4 + keyBytes.length + 4 + data.length + 4;
+
+        if (activeChannel.size() + recordSize > segmentSize && activeChannel.size() > 0) {
+            rollSegment();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(data.length).put(data).putInt((int) crc.getValue());
+        record.flip();
+
+        long recordOffset = activeChannel.size();
+        while (record.hasRemaining()) {
+            activeChannel.write(record);
+        }
+
+        Entry entry = new Entry(activeSegment, recordOffset + 4 + keyBytes.length + 4, data.length, recordSize);
+        if (fsyncIntervalMillis <= 0) {
+            // Запись индекса не должна оказаться на диске раньше данных, на которые указывает
+            activeChannel.force(false);
+        }
+        writeIndexEntry(OP_PUT, key, entry);
+        if (fsyncIntervalMillis <= 0) {
+            indexChannel.force(false);
+        }
+        stats.get(activeSegment).total += recordSize;
+        stats.get(activeSegment).live += recordSize;
+
+        Entry previous = index.put(key, entry);
+        if (previous != null) {
+            markDead(previous);
+        }
+    }
+
+    private byte[] read(Entry entry) throws IOException {
+        MappedByteBuffer mapping = mappings.get(entry.segment);
+        if (mapping == null || mapping.capacity() < entry.offset + entry.length + 4) {
+            mapping = map(entry.segment);
+            if (mapping.capacity() < entry.offset + entry.length + 4) {
+                throw new IOException("Запись за концом сегмента " + entry.segment + " по смещению " + entry.offset);
+            }
+        }
+
+        ByteBuffer view = mapping.duplicate();
+        view.position((int) entry.offset);
+        byte[] data = new byte[entry.length];
+        view.get(data);
+        int expected = view.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("Повреждена запись в сегменте " + entry.segment + " по смещению " + entry.offset);
+        }
+        return data;
+    }
+
+    /**
+     * Отображает сегмент в память целиком. Активный сегмент растет,
+     * поэтому его отображение обновляется, когда запись выходит за его границы.
+     */
+    private MappedByteBuffer map(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mappings.put(segment, mapping);
+            return mapping;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        activeChannel.force(false);
+        activeChannel.close();
+        activeSegment++;
+        stats.put(activeSegment, new SegmentStats(0));
+        activeChannel = openSegmentForAppend(activeSegment);
+        log.debug("Открыт новый сегмент {} в {}", activeSegment, directory);
+    }
+
+    private void markDead(Entry entry) {
+        SegmentStats segmentStats = stats.get(entry.segment);
+        if (segmentStats != null) {
+            segmentStats.live -= entry.recordSize;
+        }
+    }
+
+    private void writeIndexEntry(byte op, String key, Entry entry) throws IOException {
+        indexChannel.write(encodeIndexEntry(op, key, entry));
+    }
+
+    private static ByteBuffer encodeIndexEntry(byte op, String key, Entry entry) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + keyBytes.length + (entry != null ? 16 : 0));
+        buffer.put(op).putShort((short) keyBytes.length).put(keyBytes);
+        if (entry != null) {
+            buffer.putInt(entry.segment).putLong(entry.offset).putInt(entry.length);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Загружает журнал индекса. Оборванная при сбое последняя запись отбрасывается.
+     */
+    private void replayIndex() throws IOException {
+        Path indexPath = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        int valid = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                byte op = buffer.get();
+                byte[] keyBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(keyBytes);
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+                if (op == OP_PUT) {
+                    int segment = buffer.getInt();
+                    long offset = buffer.getLong();
+                    int length = buffer.getInt();
+                    index.put(key, new Entry(segment, offset, length, 4 + keyBytes.length + 4 + length + 4));
+                } else if (op == OP_DELETE) {
+                    index.remove(key);
+                } else {
+                    break;
+                }
+                valid = buffer.position();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Журнал индекса {} оборван на позиции {}, хвост отброшен", indexPath, valid);
+        }
+        if (valid < buffer.capacity()) {
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        // Записи, указывающие на удаленные сегменты, остаются от прерванного уплотнения,
+        // а записи за концом сегмента - от сбоя до сброса сегмента на диск
+        index.values().removeIf(entry -> !stats.containsKey(entry.segment)
+                || entry.offset + entry.length + 4 > stats.get(entry.segment).total);
+    }
+
+    /**
+     * Проверяет записи сегмента и обрезает его после последней целой записи.
+     *
+     * @return размер сегмента после обрезки
+     */
+    private long recoverTail(int segment) throws IOException {
+        Path path = segmentPath(segment);
+        long size = Files.size(path);
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (valid < size) {
+                int keyLength = in.readInt();
+                if (keyLength < 0 || keyLength > size - valid) {
+                    break;
+                }
+                in.readFully(new byte[keyLength]);
+                int length = in.readInt();
+                if (length < 0 || length > size - valid) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() != in.readInt()) {
+                    break;
+                }
+                valid += 4 + keyLength + 4 + length + 4;
+            }
+        } catch (EOFException e) {
+            // Последняя запись дописана не полностью
+        }
+        if (valid < size) {
+            log.warn("Сегмент {} оборван на позиции {}, хвост отброшен", path, valid);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Заменяет журнал индекса снимком живых записей.
+     * Канал снимка открывается до переименования и продолжает журнал после него;
+     * если переименовать не удалось, запись продолжается в прежний журнал.
+     */
+    private synchronized void rewriteIndex() throws IOException {
+        Path snapshot = directory.resolve(INDEX_FILE + ".tmp");
+        Files.deleteIfExists(snapshot);
+        FileChannel channel = FileChannel.open(snapshot,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            for (Map.Entry<String, Entry> live : index.entrySet()) {
+                ByteBuffer buffer = encodeIndexEntry(OP_PUT, live.getKey(), live.getValue());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(true);
+            // POSIX допускает переименование поверх открытого файла: прежний канал остается рабочим
+            Files.move(snapshot, directory.resolve(INDEX_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(snapshot);
+            throw e;
+        }
+        FileChannel previous = indexChannel;
+        indexChannel = channel;
+        previous.close();
+        forceDirectory();
+    }
+
+    /**
+     * Сбрасывает на диск сам каталог, чтобы переименование пережило сбой питания.
+     * В Windows каталог нельзя открыть как файл, там это не требуется.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Не удалось сбросить на диск каталог {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Integer.parseInt(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        return segments;
+    }
+
+    private FileChannel openSegmentForAppend(int segment) throws IOException {
+        return FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Положение данных изображения в сегменте.
+     */
+    private static final class Entry {
+        final int segment;
+        final long offset;
+        final int length;
+        /** Полный размер записи в сегменте, включая ключ и служебные поля */
+        final int recordSize;
+
+        Entry(int segment, long offset, int length, int recordSize) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+        }
+    }
+
+    /**
+     * Объем записей в сегменте.
+     */
+    private static final class SegmentStats {
+        long total;
+        long live;
+
+        SegmentStats(long total) {
+            this.total = total;
+        }
+
+        double garbage() {
+            return (double) (total - live) / total;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ru.skypro.homework.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.NoSuchFileException;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище изображений с S3-совместимым API ({@code app.storage.type=s3}).
+ * Позволяет нескольким узлам приложения работать с общим набором изображений.
+ * Для локальной разработки подходит MinIO:
+ * {@code docker run -p 9000:9000 minio/minio server /data}.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ */
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "s3")
+public class S3ImageStore implements ImageStore {
+
+    private final S3Client client;
+    private final String bucket;
+
+    public S3ImageStore(@Value("${app.storage.s3.endpoint}") String endpoint,
+                        @Value("${app.storage.s3.region:us-east-1}") String region,
+                        @Value("${app.storage.s3.bucket:ads-images}") String bucket,
+                        @Value("${app.storage.s3.access-key}") String accessKey,
+                        @Value("${app.storage.s3.secret-key}") String secretKey) {
+        this.bucket = bucket;
+        this.client = S3Client.builder()
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretKey)))
+                // MinIO и большинство S3-совместимых серверов адресуют бакет в пути
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+                .build();
+    }
+
+    @Override
+    public void save(String key, InputStream content, long size) throws IOException {
+        try {
+            client.putObject(b -> b.bucket(bucket).key(key).contentLength(size),
+                    RequestBody.fromInputStream(content, size));
+        } catch (SdkException e) {
+            throw new IOException("Не удалось сохранить объект " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] load(String key) throws IOException {
+        try {
+            return client.getObjectAsBytes(b -> b.bucket(bucket).key(key)).asByteArray();
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key, null, "Файл не найден");
+        } catch (SdkException e) {
+            throw new IOException("Не удалось прочитать объект " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream stream(String key) throws IOException {
+        try {
+            return client.getObject(b -> b.bucket(bucket).key(key));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key, null, "Файл не найден");
+        } catch (SdkException e) {
+            throw new IOException("Не удалось прочитать объект " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // DeleteObject в S3 идемпотентен и не сообщает, был ли объект
+        boolean existed = exists(key);
+        try {
+            client.deleteObject(b -> b.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw new IOException("Не удалось удалить объект " + key + ": " + e.getMessage(), e);
+        }
+        return existed;
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        try {
+            client.headObject(b -> b.bucket(bucket).key(key));
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (SdkException e) {
+            throw new IOException("Не удалось проверить объект " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Обходит объекты бакета постранично, по 1000 ключей на запрос.
+     */
+    @Override
+    public void list(Consumer<StoredImage> consumer) throws IOException {
+        try {
+            for (S3Object object : client.listObjectsV2Paginator(b -> b.bucket(bucket)).contents()) {
+                consumer.accept(new StoredImage(object.key(), object.size(), object.lastModified()));
+            }
+        } catch (SdkException e) {
+            throw new IOException("Не удалось получить список объектов: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Копирует объект на стороне сервера, не передавая данные через приложение.
+     */
+    @Override
+    public void link(String sourceKey, String targetKey) throws IOException {
+        try {
+            client.copyObject(b -> b.sourceBucket(bucket).sourceKey(sourceKey)
+                    .destinationBucket(bucket).destinationKey(targetKey));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(sourceKey, null, "Файл не найден");
+        } catch (SdkException e) {
+            throw new IOException("Не удалось скопировать объект " + sourceKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Создает бакет, если его еще нет.
+     */
+    @Override
+    public void init() throws IOException {
+        try {
+            client.headBucket(b -> b.bucket(bucket));
+        } catch (NoSuchBucketException e) {
+            client.createBucket(b -> b.bucket(bucket));
+            log.info("Создан бакет для изображений: {}", bucket);
+        } catch (SdkException e) {
+            throw new IOException("Хранилище S3 недоступно: " + e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,28 @@
+package ru.skypro.homework.storage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Сведения об изображении в хранилище, которые возвращает обход хранилища.
+ *
+ * @author Система хранения изображений
+ * @version 1.0
+ *
+ * @see ImageStore#list(java.util.function.Consumer)
+ */
+@Getter
+@RequiredArgsConstructor
+public class StoredImage {
+
+    /** Ключ изображения */
+    private final String key;
+
+    /** Размер содержимого в байтах */
+    private final long size;
+
+    /** Время записи; реализация может вернуть более позднее время, но не более раннее */
+    private final Instant lastModified;
+}
@@ -0,0 +1,137 @@
+package ru.skypro.homework.validation;
+
+import ru.skypro.homework.dto.CreateOrUpdateAd;
+import ru.skypro.homework.dto.CreateOrUpdateComment;
+import ru.skypro.homework.dto.UpdateUser;
+import ru.skypro.homework.exception.BadRequestException;
+
+import java.util.regex.Pattern;
+
+import static ru.skypro.homework.validation.ValidationRules.*;
+
+/**
+ * Проверки входных данных в сервисах по правилам {@link ValidationRules}.
+ *
+ * <p>Сервисы вызываются не только из контроллеров с {@code @Valid}, поэтому повторяют
+ * проверки аннотаций. Проверки строк не создают объектов: пустая строка определяется
+ * без {@code trim()}, длина сравнивается напрямую. Шаблон телефона компилируется один раз,
+ * а не при каждом вызове, как в {@code String.matches}.
+ * Первое нарушенное правило сообщается исключением {@link BadRequestException}.</p>
+ *
+ * @author Валидация входных данных
+ * @version 1.0
+ */
+public final class InputValidator {
+
+    private static final Pattern PHONE = Pattern.compile(PHONE_REGEXP);
+
+    private InputValidator() {
+    }
+
+    /**
+     * Проверяет данные нового объявления: все поля обязательны.
+     *
+     * @param ad данные объявления
+     * @throws BadRequestException если данные не проходят проверку
+     */
+    public static void validateNewAd(CreateOrUpdateAd ad) {
+        if (ad.getPrice() == null) {
+            throw new BadRequestException(AD_PRICE_EMPTY);
+        }
+        if (ad.getTitle() == null) {
+            throw new BadRequestException(AD_TITLE_EMPTY);
+        }
+        if (ad.getDescription() == null) {
+            throw new BadRequestException(AD_DESCRIPTION_EMPTY);
+        }
+        validateAdUpdate(ad);
+    }
+
+    /**
+     * Проверяет изменения объявления: незаполненные поля не меняются и не проверяются.
+     *
+     * @param ad изменения объявления
+     * @throws BadRequestException если данные не проходят проверку
+     */
+    public static void validateAdUpdate(CreateOrUpdateAd ad) {
+        Integer price = ad.getPrice();
+        if (price != null && (price < AD_PRICE_MIN || price > AD_PRICE_MAX)) {
+            throw new BadRequestException(AD_PRICE_RANGE);
+        }
+        checkText(ad.getTitle(), AD_TITLE_MIN, AD_TITLE_MAX, AD_TITLE_EMPTY, AD_TITLE_SIZE);
+        checkText(ad.getDescription(), AD_DESCRIPTION_MIN, AD_DESCRIPTION_MAX,
+                AD_DESCRIPTION_EMPTY, AD_DESCRIPTION_SIZE);
+    }
+
+    /**
+     * Проверяет текст комментария.
+     *
+     * @param comment комментарий
+     * @throws BadRequestException если текст пустой или его длина вне допустимых границ
+     */
+    public static void validateComment(CreateOrUpdateComment comment) {
+        if (comment.getText() == null) {
+            throw new BadRequestException(COMMENT_TEXT_EMPTY);
+        }
+        checkText(comment.getText(), COMMENT_TEXT_MIN, COMMENT_TEXT_MAX, COMMENT_TEXT_EMPTY, COMMENT_TEXT_SIZE);
+    }
+
+    /**
+     * Проверяет изменения профиля: незаполненные поля не меняются и не проверяются.
+     *
+     * @param user изменения профиля
+     * @throws BadRequestException если данные не проходят проверку
+     */
+    public static void validateUserUpdate(UpdateUser user) {
+        if (user.getFirstName() != null && !lengthBetween(user.getFirstName(), USER_NAME_MIN, USER_NAME_MAX)) {
+            throw new BadRequestException(USER_FIRST_NAME_SIZE);
+        }
+        if (user.getLastName() != null && !lengthBetween(user.getLastName(), USER_NAME_MIN, USER_NAME_MAX)) {
+            throw new BadRequestException(USER_LAST_NAME_SIZE);
+        }
+        if (user.getPhone() != null && !isPhone(user.getPhone())) {
+            throw new BadRequestException(PHONE_FORMAT);
+        }
+    }
+
+    /**
+     * @param value проверяемая строка
+     * @return true, если строка соответствует формату телефона {@link ValidationRules#PHONE_REGEXP}
+     */
+    public static boolean isPhone(CharSequence value) {
+        return PHONE.matcher(value).matches();
+    }
+
+    /**
+     * Аналог {@code value.trim().isEmpty()} без создания новой строки.
+     *
+     * @param value проверяемая строка
+     * @return true, если строка состоит только из пробельных и управляющих символов
+     */
+    public static boolean isBlank(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean lengthBetween(CharSequence value, int min, int max) {
+        int length = value.length();
+        return length >= min && length <= max;
+    }
+
+    // Пустое значение не проверяется: для изменений оно означает, что поле не меняется
+    private static void checkText(String value, int min, int max, String emptyMessage, String sizeMessage) {
+        if (value == null) {
+            return;
+        }
+        if (isBlank(value)) {
+            throw new BadRequestException(emptyMessage);
+        }
+        if (!lengthBetween(value, min, max)) {
+            throw new BadRequestException(sizeMessage);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ru.skypro.homework.validation;
+
+/**
+ * Ограничения на входные данные объявлений, комментариев и пользователей.
+ * Константы используются и в аннотациях Bean Validation в DTO, и в проверках
+ * {@link InputValidator} в сервисах, поэтому границы и сообщения задаются в одном месте.
+ *
+ * @author Валидация входных данных
+ * @version 1.0
+ */
+public final class ValidationRules {
+
+    /** Заголовок объявления */
+    public static final int AD_TITLE_MIN = 4;
+    public static final int AD_TITLE_MAX = 32;
+    public static final String AD_TITLE_EMPTY = "Заголовок не может быть пустым";
+    public static final String AD_TITLE_SIZE = "Заголовок должен быть от 4 до 32 символов";
+
+    /** Описание объявления */
+    public static final int AD_DESCRIPTION_MIN = 8;
+    public static final int AD_DESCRIPTION_MAX = 64;
+    public static final String AD_DESCRIPTION_EMPTY = "Описание не может быть пустым";
+    public static final String AD_DESCRIPTION_SIZE = "Описание должно быть от 8 до 64 символов";
+
+    /** Цена объявления */
+    public static final int AD_PRICE_MIN = 0;
+    public static final int AD_PRICE_MAX = 10_000_000;
+    public static final String AD_PRICE_EMPTY = "Цена не может быть пустой";
+    public static final String AD_PRICE_RANGE = "Цена должна быть от 0 до 10000000";
+
+    /** Текст комментария */
+    public static final int COMMENT_TEXT_MIN = 8;
+    public static final int COMMENT_TEXT_MAX = 64;
+    public static final String COMMENT_TEXT_EMPTY = "Текст комментария не может быть пустым";
+    public static final String COMMENT_TEXT_SIZE = "Текст комментария должен быть от 8 до 64 символов";
+
+    /** Имя и фамилия в профиле пользователя */
+    public static final int USER_NAME_MIN = 3;
+    public static final int USER_NAME_MAX = 10;
+    public static final String USER_FIRST_NAME_SIZE = "Имя должно быть от 3 до 10 символов";
+    public static final String USER_LAST_NAME_SIZE = "Фамилия должна быть от 3 до 10 символов";
+
+    /** Телефон в формате +7 XXX XXX-XX-XX */
+    public static final String PHONE_REGEXP = "\\+7\\s?\\(?\\d{3}\\)?\\s?\\d{3}-?\\d{2}-?\\d{2}";
+    public static final String PHONE_FORMAT = "Номер телефона должен соответствовать формату: +7 XXX XXX-XX-XX";
+
+    private ValidationRules() {
+    }
+}
@@ -0,0 +1,44 @@
+-- Исходная схема в том виде, в котором ее создавал Hibernate (ddl-auto=update),
+-- включая имена ограничений. Для существующей базы эта миграция не выполняется:
+-- при первом запуске Flyway принимает такую базу за версию 1
+-- (spring.flyway.baseline-on-migrate), поэтому все последующие изменения схемы
+-- должны быть в следующих версиях.
+
+create table users
+(
+    id         serial       not null,
+    email      varchar(255) not null,
+    first_name varchar(255),
+    image      varchar(255),
+    last_name  varchar(255),
+    password   varchar(255) not null,
+    phone      varchar(255),
+    role       varchar(255),
+    primary key (id)
+);
+
+create table ads
+(
+    id          serial       not null,
+    description varchar(1000),
+    image       varchar(255),
+    price       int4,
+    title       varchar(255) not null,
+    author_id   int4,
+    primary key (id)
+);
+
+create table comments
+(
+    id         serial       not null,
+    created_at timestamp,
+    text       varchar(255) not null,
+    ad_id      int4,
+    author_id  int4,
+    primary key (id)
+);
+
+alter table users add constraint UK_6dotkott2kjsp8vw4d0m25fb7 unique (email);
+alter table ads add constraint FKhkvfso0nawa9lrpqymm73pe9s foreign key (author_id) references users;
+alter table comments add constraint FK8c6328vy3jubusjo17ucraqf1 foreign key (ad_id) references ads;
+alter table comments add constraint FKn2na60ukhs76ibtpt9burkm27 foreign key (author_id) references users;
@@ -0,0 +1,10 @@
+-- Счетчик комментариев объявления (AdEntity.commentCount).
+-- Столбец мог уже появиться в базе, обновлявшейся через ddl-auto=update,
+-- поэтому добавляется условно, а значения пересчитываются в любом случае.
+-- Пересчет обновляет все строки ads одной транзакцией; на большой таблице
+-- миграцию лучше выполнять в период низкой нагрузки.
+
+alter table ads add column if not exists comment_count integer default 0 not null;
+
+update ads a
+set comment_count = (select count(*) from comments c where c.ad_id = a.id);
@@ -0,0 +1,20 @@
+-- Индексы для основных путей доступа.
+-- CREATE INDEX CONCURRENTLY не блокирует запись в таблицы и не может выполняться
+-- в транзакции, поэтому Flyway выполняет эту миграцию без транзакции; другие
+-- команды в этот файл добавлять нельзя. Если построение прервалось, в базе
+-- остается невалидный индекс: его нужно удалить (DROP INDEX CONCURRENTLY)
+-- и повторить миграцию (flyway repair).
+
+-- Страницы комментариев объявления по ключу (created_at, id); покрывает и поиск по ad_id
+create index concurrently if not exists idx_comments_ad_created_id on comments (ad_id, created_at, id);
+
+-- Объявления пользователя (GET /ads/me) и удаление пользователя
+create index concurrently if not exists idx_ads_author_id on ads (author_id);
+
+-- Комментарии пользователя при его удалении
+create index concurrently if not exists idx_comments_author_id on comments (author_id);
+
+-- Поиск пользователя по email без учета регистра (UserRepository.findByNormalizedEmail).
+-- Уникальность не допускает регистрации адресов, отличающихся только регистром;
+-- если такие адреса уже есть, их нужно объединить до миграции
+create unique index concurrently if not exists ux_users_email_lower on users (lower(email));
@@ -0,0 +1,83 @@
+package ru.skypro.homework.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.skypro.homework.dto.CreateOrUpdateAd;
+import ru.skypro.homework.dto.CreateOrUpdateComment;
+import ru.skypro.homework.dto.UpdateUser;
+import ru.skypro.homework.validation.InputValidator;
+import ru.skypro.homework.validation.ValidationRules;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость проверки входных данных одного запроса.
+ * Методы {@code legacy*} повторяют прежние проверки в сервисах ({@code trim()}
+ * и {@code String.matches}) для сравнения.
+ *
+ * <p>Запуск: {@code mvn test-compile}, затем класс запускается как приложение
+ * с тестовым classpath, например из IDE. Профилирование аллокаций:
+ * аргумент {@code -prof gc} или {@code .addProfiler("gc")} в {@link #main}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputValidatorBenchmark {
+
+    private final CreateOrUpdateAd ad = new CreateOrUpdateAd("Велосипед", 15000, "Горный велосипед, почти новый");
+    private final CreateOrUpdateComment comment = new CreateOrUpdateComment("Еще продается? Готов забрать сегодня");
+    private final UpdateUser user = new UpdateUser("Иван", "Петров", "+7 912 345-67-89");
+
+    @Benchmark
+    public CreateOrUpdateAd ad() {
+        InputValidator.validateNewAd(ad);
+        return ad;
+    }
+
+    @Benchmark
+    public CreateOrUpdateComment comment() {
+        InputValidator.validateComment(comment);
+        return comment;
+    }
+
+    @Benchmark
+    public UpdateUser user() {
+        InputValidator.validateUserUpdate(user);
+        return user;
+    }
+
+    @Benchmark
+    public boolean legacyAd() {
+        return ad.getPrice() >= 0
+                && !ad.getTitle().trim().isEmpty()
+                && ad.getTitle().length() >= 4 && ad.getTitle().length() <= 32
+                && !ad.getDescription().trim().isEmpty()
+                && ad.getDescription().length() >= 8 && ad.getDescription().length() <= 64;
+    }
+
+    @Benchmark
+    public boolean legacyUser() {
+        return user.getFirstName().length() >= 3 && user.getFirstName().length() <= 10
+                && user.getLastName().length() >= 3 && user.getLastName().length() <= 10
+                && user.getPhone().matches(ValidationRules.PHONE_REGEXP);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InputValidatorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
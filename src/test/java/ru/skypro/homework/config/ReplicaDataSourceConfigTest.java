@@ -0,0 +1,111 @@
+package ru.skypro.homework.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.entity.AdEntity;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.support.TestEntities;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет запуск приложения с чтением с реплик: транзакции readOnly получают
+ * соединение с репликой, читают кэш второго уровня, но не кладут в него сущности;
+ * метрики реплик публикуются.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica-config;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "app.datasource.replicas.enabled=true",
+        // Репликой служит та же база: проверяется выбор соединения и заполнение кэша
+        "app.datasource.replicas.urls=jdbc:h2:mem:replica-config;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "app.datasource.replicas.read-your-writes-ms=0"
+})
+class ReplicaDataSourceConfigTest {
+
+    @Autowired
+    private AdRepository adRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+    private Cache cache;
+
+    @BeforeEach
+    void setUp() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+        cache = entityManagerFactory.getCache();
+    }
+
+    @Test
+    void readOnlyTransactionReadsFromReplica() {
+        Boolean replicaInUse = readOnly.execute(status -> {
+            adRepository.count();
+            return ReplicaRoutingDataSource.isReplicaInUse();
+        });
+
+        assertThat(replicaInUse).isTrue();
+        assertThat(meterRegistry.get("db.replicas.healthy").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.find("hikaricp.connections").tag("pool", "replica-1").gauge()).isNotNull();
+    }
+
+    @Test
+    void readOnlyTransactionDoesNotPopulateSecondLevelCache() {
+        Integer adId = createAd();
+        cache.evictAll();
+
+        readOnly.executeWithoutResult(status -> assertThat(adRepository.findById(adId)).isPresent());
+        assertThat(cache.contains(AdEntity.class, adId)).isFalse();
+
+        readWrite.executeWithoutResult(status -> adRepository.findById(adId));
+        assertThat(cache.contains(AdEntity.class, adId)).isTrue();
+    }
+
+    @Test
+    void readOnlyTransactionReadsSecondLevelCache() {
+        Integer adId = createAd();
+        cache.evictAll();
+        readWrite.executeWithoutResult(status -> adRepository.findById(adId));
+
+        // Удаление мимо Hibernate не сбрасывает кэш: объявление остается только в нем
+        jdbcTemplate.update("delete from ads where id = ?", adId);
+
+        readOnly.executeWithoutResult(status -> assertThat(adRepository.findById(adId)).isPresent());
+    }
+
+    private Integer createAd() {
+        return readWrite.execute(status ->
+                adRepository.save(TestEntities.ad(userRepository.save(TestEntities.user()))).getId());
+    }
+}
@@ -0,0 +1,171 @@
+package ru.skypro.homework.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет выбор между репликами и основным сервером на базах H2 в памяти.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private final List<Connection> keptOpen = new ArrayList<>();
+    private ReplicaRoutingDataSource routing;
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        SecurityContextHolder.clearContext();
+        for (Connection connection : keptOpen) {
+            connection.close();
+        }
+        pools.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void readsAlternateBetweenReplicas() throws SQLException {
+        String first = database();
+        String second = database();
+        routing = routing(0, pool(first, 2), pool(second, 2));
+
+        List<String> reads = Arrays.asList(read(), read(), read(), read());
+
+        assertThat(reads.subList(0, 2)).containsExactlyInAnyOrder(first, second);
+        assertThat(reads.subList(2, 4)).isEqualTo(reads.subList(0, 2));
+    }
+
+    @Test
+    void unavailableReplicaIsSkippedUntilHealthCheckSucceeds() throws SQLException {
+        String available = database();
+        String restored = database();
+        // Базы еще нет, и IFEXISTS не дает ее создать: подключение не удается
+        routing = routing(0, pool(available, 2), pool(restored + ";IFEXISTS=TRUE", 2));
+
+        assertThat(Arrays.asList(read(), read(), read())).containsOnly(available);
+        assertThat(routing.healthyReplicas()).isEqualTo(1);
+
+        keptOpen.add(DriverManager.getConnection("jdbc:h2:mem:" + restored + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        routing.checkReplicas();
+
+        assertThat(routing.healthyReplicas()).isEqualTo(2);
+        assertThat(Arrays.asList(read(), read())).containsExactlyInAnyOrder(available, restored);
+    }
+
+    @Test
+    void readsGoToPrimaryWhenNoReplicaIsAvailable() throws SQLException {
+        routing = routing(0, pool(database() + ";IFEXISTS=TRUE", 2));
+
+        assertThat(read()).isEqualTo("primary");
+        assertThat(routing.healthyReplicas()).isZero();
+    }
+
+    @Test
+    void exhaustedReplicaPoolDoesNotExcludeReplica() throws SQLException {
+        HikariDataSource pool = pool(database(), 1);
+        routing = routing(0, pool);
+        keptOpen.add(pool.getConnection());
+
+        assertThat(read()).isEqualTo("primary");
+        routing.checkReplicas();
+
+        assertThat(routing.healthyReplicas()).isEqualTo(1);
+    }
+
+    @Test
+    void usePrimaryReadsFromPrimaryInReadOnlyTransaction() throws SQLException {
+        routing = routing(0, pool(database(), 2));
+
+        assertThat(ReplicaRoutingDataSource.usePrimary(this::readQuietly)).isEqualTo("primary");
+    }
+
+    @Test
+    void replicaInUseIsReportedUntilTransactionCompletes() throws SQLException {
+        String replica = database();
+        routing = routing(0, pool(replica, 2));
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertThat(read()).isEqualTo(replica);
+        assertThat(ReplicaRoutingDataSource.isReplicaInUse()).isTrue();
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        assertThat(ReplicaRoutingDataSource.isReplicaInUse()).isFalse();
+    }
+
+    @Test
+    void userReadsOwnWritesFromPrimary() throws SQLException {
+        String replica = database();
+        routing = routing(60_000, pool(replica, 2));
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("writer", null, "ROLE_USER"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        routing.getConnection().close();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(read()).isEqualTo("primary");
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("reader", null, "ROLE_USER"));
+        assertThat(read()).isEqualTo(replica);
+    }
+
+    private ReplicaRoutingDataSource routing(long readYourWritesMs, HikariDataSource... replicas) {
+        return new ReplicaRoutingDataSource(pool("primary", 2), Arrays.asList(replicas), 0, readYourWritesMs, 1);
+    }
+
+    private static String database() {
+        return "replica" + DATABASES.incrementAndGet();
+    }
+
+    private HikariDataSource pool(String database, int size) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:" + database + (database.contains(";") ? "" : ";DB_CLOSE_DELAY=-1"));
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMaximumPoolSize(size);
+        pool.setConnectionTimeout(1000);
+        pool.setInitializationFailTimeout(-1);
+        pools.add(pool);
+        return pool;
+    }
+
+    /**
+     * @return имя базы, с которой транзакция readOnly получила соединение
+     */
+    private String read() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try (Connection connection = routing.getConnection()) {
+            String url = connection.getMetaData().getURL();
+            return url.substring("jdbc:h2:mem:".length()).split(";")[0];
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+    }
+
+    private String readQuietly() {
+        try {
+            return read();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ru.skypro.homework.controller;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.entity.AdEntity;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.CommentRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.support.SqlStatements;
+import ru.skypro.homework.support.TestEntities;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяет, что публичные эндпоинты объявлений выполняют постоянное число SQL-запросов
+ * независимо от количества объявлений и комментариев, и что это число публикуется
+ * в заголовке ответа и в метриках запроса.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sql-count;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+        "app.sql-statistics.enabled=true",
+        "app.sql-statistics.response-headers=true"
+})
+@AutoConfigureMockMvc
+class AdControllerSqlCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AdRepository adRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            commentRepository.deleteAllInBatch();
+            adRepository.deleteAllInBatch();
+            userRepository.deleteAllInBatch();
+        });
+    }
+
+    @Test
+    void getAllAdsRunsSameNumberOfStatementsForAnyNumberOfAds() throws Exception {
+        createAdWithComments(0);
+        mockMvc.perform(get("/ads"))
+                .andExpect(status().isOk())
+                .andExpect(SqlStatements.count(1));
+
+        for (int i = 0; i < 20; i++) {
+            createAdWithComments(0);
+        }
+        mockMvc.perform(get("/ads"))
+                .andExpect(status().isOk())
+                .andExpect(SqlStatements.count(1));
+    }
+
+    @Test
+    void getAdLoadsAdAndAuthorOnly() throws Exception {
+        Integer adId = createAdWithComments(5);
+
+        // Объявление и автор загружаются по идентификатору, чтобы при включенном кэше второго уровня
+        // оба запроса обслуживались из него; комментарии не загружаются
+        mockMvc.perform(get("/ads/{id}", adId))
+                .andExpect(status().isOk())
+                .andExpect(SqlStatements.count(2));
+    }
+
+    @Test
+    void statementsAreRecordedPerRoutePattern() throws Exception {
+        Integer adId = createAdWithComments(0);
+        DistributionSummary before = statementsSummary();
+        long requests = before != null ? before.count() : 0;
+        double statements = before != null ? before.totalAmount() : 0;
+
+        mockMvc.perform(get("/ads/{id}", adId))
+                .andExpect(status().isOk());
+
+        DistributionSummary summary = statementsSummary();
+        assertThat(summary).isNotNull();
+        assertThat(summary.count()).isEqualTo(requests + 1);
+        assertThat(summary.totalAmount() - statements).isEqualTo(2);
+        assertThat(meterRegistry.find("http.server.requests.sql.time").tag("uri", "/ads/{id}").timer()).isNotNull();
+    }
+
+    private DistributionSummary statementsSummary() {
+        return meterRegistry.find("http.server.requests.sql.statements")
+                .tags("method", "GET", "uri", "/ads/{id}")
+                .summary();
+    }
+
+    private Integer createAdWithComments(int count) {
+        return transactionTemplate.execute(status -> {
+            AdEntity ad = TestEntities.ad(userRepository.save(TestEntities.user()));
+            ad.setCommentCount(count);
+            adRepository.save(ad);
+            for (int i = 0; i < count; i++) {
+                commentRepository.save(TestEntities.comment(ad, userRepository.save(TestEntities.user()),
+                        TestEntities.CREATED_AT.plusMinutes(i)));
+            }
+            return ad.getId();
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package ru.skypro.homework.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.entity.AdEntity;
+import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.support.TestEntities;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет, что изменение счетчика комментариев удаляет из кэша второго уровня
+ * только свое объявление.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:comment-counter;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class AdCommentCounterTest {
+
+    @Autowired
+    private AdRepository adRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void adjustingCountEvictsOnlyThatAd() {
+        UserEntity author = userRepository.save(TestEntities.user());
+        Integer changed = createAd(author);
+        Integer other = createAd(author);
+        Cache cache = entityManagerFactory.getCache();
+        cache.evictAll();
+        // Загрузка кладет объявления в кэш второго уровня
+        adRepository.findById(changed);
+        adRepository.findById(other);
+        assertThat(cache.contains(AdEntity.class, changed)).isTrue();
+        assertThat(cache.contains(AdEntity.class, other)).isTrue();
+
+        Integer updated = transactionTemplate.execute(status -> adRepository.adjustCommentCount(changed, 1));
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(cache.contains(AdEntity.class, changed)).isFalse();
+        assertThat(cache.contains(AdEntity.class, other)).isTrue();
+        assertThat(adRepository.findById(changed)).get().extracting(AdEntity::getCommentCount).isEqualTo(1);
+    }
+
+    private Integer createAd(UserEntity author) {
+        return adRepository.save(TestEntities.ad(author)).getId();
+    }
+}
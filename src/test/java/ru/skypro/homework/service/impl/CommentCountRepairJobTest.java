@@ -0,0 +1,123 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.entity.AdEntity;
+import ru.skypro.homework.entity.CommentEntity;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.CommentRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.support.TestEntities;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет, что сверка счетчиков комментариев исправляет расхождения
+ * и не затирает счетчик, который увеличивает параллельная транзакция.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:count-repair;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "app.comments.count-repair.enabled=false"
+})
+class CommentCountRepairJobTest {
+
+    @Autowired
+    private CommentCountRepairJob repairJob;
+
+    @Autowired
+    private AdRepository adRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            commentRepository.deleteAllInBatch();
+            adRepository.deleteAllInBatch();
+            userRepository.deleteAllInBatch();
+        });
+    }
+
+    @Test
+    void repairFixesOnlyDivergedCounts() {
+        Integer drifted = createAd(3, 5);
+        Integer correct = createAd(2, 2);
+
+        assertThat(repairJob.repair()).isEqualTo(1);
+
+        assertThat(adRepository.findCommentCount(drifted)).contains(3);
+        assertThat(adRepository.findCommentCount(correct)).contains(2);
+    }
+
+    @Test
+    void repairWaitsForCommentBeingAdded() throws Exception {
+        Integer adId = createAd(1, 1);
+        CountDownLatch added = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Добавление комментария держит транзакцию открытой после увеличения счетчика
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() ->
+                transactionTemplate.executeWithoutResult(status -> {
+                    AdEntity ad = adRepository.getReferenceById(adId);
+                    commentRepository.save(comment(ad));
+                    adRepository.adjustCommentCount(adId, 1);
+                    added.countDown();
+                    await(release);
+                }));
+        assertThat(added.await(10, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Long> repair = CompletableFuture.supplyAsync(repairJob::repair);
+        Thread.sleep(300);
+        assertThat(repair).isNotDone();
+
+        release.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+
+        assertThat(repair.get(10, TimeUnit.SECONDS)).isZero();
+        assertThat(adRepository.findCommentCount(adId)).contains(2);
+    }
+
+    private Integer createAd(int comments, int count) {
+        return transactionTemplate.execute(status -> {
+            AdEntity ad = TestEntities.ad(userRepository.save(TestEntities.user()));
+            ad.setCommentCount(count);
+            adRepository.save(ad);
+            for (int i = 0; i < comments; i++) {
+                commentRepository.save(comment(ad));
+            }
+            return ad.getId();
+        });
+    }
+
+    private CommentEntity comment(AdEntity ad) {
+        return TestEntities.comment(ad, userRepository.save(TestEntities.user()), TestEntities.CREATED_AT);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ru.skypro.homework.service.impl;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import ru.skypro.homework.dto.Comment;
+import ru.skypro.homework.dto.Comments;
+import ru.skypro.homework.entity.AdEntity;
+import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.exception.NotFoundException;
+import ru.skypro.homework.mapper.CommentMapper;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.CommentRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.support.TestEntities;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет, что получение комментариев выполняет постоянное число SQL-запросов
+ * независимо от количества комментариев и их авторов.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // Считаются запросы к базе данных, поэтому кэш второго уровня выключен
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.show-sql=false"
+})
+class CommentServiceImplQueryCountTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private AdRepository adRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private CommentServiceImpl commentService;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        commentService = new CommentServiceImpl(commentRepository, adRepository, userRepository, new CommentMapper(),
+                event -> { }, null, null, null, Optional.empty());
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void getCommentsRunsSameNumberOfStatementsForAnyNumberOfAuthors() {
+        Integer smallAd = createAdWithComments(3);
+        Integer largeAd = createAdWithComments(40);
+
+        long small = countStatements(() -> commentService.getComments(smallAd, 50, "desc", null));
+        long large = countStatements(() -> commentService.getComments(largeAd, 50, "desc", null));
+
+        assertThat(small).isEqualTo(2);
+        assertThat(large).isEqualTo(small);
+    }
+
+    @Test
+    void everyPageRunsTwoStatementsAndPagesDoNotOverlap() {
+        Integer adId = createAdWithComments(25);
+
+        Set<Integer> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String pageCursor = cursor;
+            Comments[] page = new Comments[1];
+            long statements = countStatements(() -> page[0] = commentService.getComments(adId, 10, "asc", pageCursor));
+
+            assertThat(statements).isEqualTo(2);
+            assertThat(page[0].getCount()).isEqualTo(25);
+            for (Comment comment : page[0].getResults()) {
+                assertThat(seen.add(comment.getPk())).isTrue();
+                assertThat(comment.getAuthorFirstName()).isNotNull();
+            }
+            cursor = page[0].getNext();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).hasSize(25);
+    }
+
+    @Test
+    void pagesWithinOneTimestampFollowIdOrder() {
+        // Все комментарии созданы в одну минуту, поэтому страницы разделяет только id
+        Integer adId = createAdWithComments(25, 25);
+
+        for (String order : new String[]{"asc", "desc"}) {
+            List<Integer> ids = new ArrayList<>();
+            String cursor = null;
+            do {
+                Comments page = commentService.getComments(adId, 7, order, cursor);
+                page.getResults().forEach(comment -> ids.add(comment.getPk()));
+                cursor = page.getNext();
+            } while (cursor != null);
+
+            assertThat(ids).hasSize(25).doesNotHaveDuplicates();
+            if ("asc".equals(order)) {
+                assertThat(ids).isSorted();
+            } else {
+                assertThat(ids).isSortedAccordingTo(Comparator.reverseOrder());
+            }
+        }
+    }
+
+    @Test
+    void missingAdIsDetectedBySingleStatement() {
+        long statements = countStatements(() ->
+                assertThatThrownBy(() -> commentService.getComments(-1, 10, "desc", null))
+                        .isInstanceOf(NotFoundException.class));
+
+        assertThat(statements).isEqualTo(1);
+    }
+
+    private long countStatements(Runnable action) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Integer createAdWithComments(int count) {
+        // Каждые два комментария получают одинаковое время, чтобы проверить сравнение по id
+        return createAdWithComments(count, 2);
+    }
+
+    private Integer createAdWithComments(int count, int perTimestamp) {
+        AdEntity ad = TestEntities.ad(entityManager.persist(TestEntities.user()));
+        ad.setCommentCount(count);
+        entityManager.persist(ad);
+        for (int i = 0; i < count; i++) {
+            UserEntity author = entityManager.persist(TestEntities.user());
+            entityManager.persist(TestEntities.comment(ad, author,
+                    TestEntities.CREATED_AT.plusMinutes(i / perTimestamp)));
+        }
+        return ad.getId();
+    }
+}
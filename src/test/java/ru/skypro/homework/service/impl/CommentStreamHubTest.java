@@ -0,0 +1,204 @@
+package ru.skypro.homework.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.skypro.homework.dto.Comment;
+import ru.skypro.homework.event.CommentChangedEvent;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет рассылку изменений комментариев и отключение медленных и отключившихся подписчиков.
+ */
+class CommentStreamHubTest {
+
+    private static final int BUFFER_SIZE = 2;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private TestHub hub;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        hub.stop();
+    }
+
+    @Test
+    void changeIsSentToSubscribersOfItsAd() {
+        hub = new TestHub(4, 5000);
+        RecordingEmitter first = hub.open(1, Mode.RECORD);
+        RecordingEmitter second = hub.open(1, Mode.RECORD);
+        RecordingEmitter other = hub.open(2, Mode.RECORD);
+
+        hub.onCommentChanged(new CommentChangedEvent(1, CommentChangedEvent.Type.CREATED, comment(10)));
+
+        awaitTrue(() -> first.sent.size() == 2 && second.sent.size() == 2);
+        assertThat(first.sent.get(0)).contains("subscribed");
+        assertThat(first.sent.get(1)).contains("event:created", "id:10");
+        assertThat(second.sent.get(1)).contains("event:created", "id:10");
+        awaitTrue(() -> other.sent.size() == 1);
+        assertThat(other.sent).noneMatch(event -> event.contains("event:created"));
+    }
+
+    @Test
+    void heartbeatIsSentToEverySubscriber() {
+        hub = new TestHub(4, 5000);
+        RecordingEmitter first = hub.open(1, Mode.RECORD);
+        RecordingEmitter second = hub.open(2, Mode.RECORD);
+
+        hub.heartbeat();
+
+        awaitTrue(() -> first.sent.size() == 2 && second.sent.size() == 2);
+        assertThat(first.sent.get(1)).contains("heartbeat");
+        assertThat(second.sent.get(1)).contains("heartbeat");
+    }
+
+    @Test
+    void subscriberWithFullQueueIsEvicted() {
+        hub = new TestHub(4, 60_000);
+        RecordingEmitter slow = hub.open(1, Mode.BLOCK);
+        awaitTrue(() -> slow.sending);
+
+        for (int i = 0; i <= BUFFER_SIZE; i++) {
+            hub.heartbeat();
+        }
+
+        assertThat(hub.size()).isZero();
+        assertThat(hub.evicted()).isEqualTo(1);
+        assertThat(slow.completed).isFalse();
+        release.countDown();
+        awaitTrue(() -> slow.completed);
+    }
+
+    @Test
+    void stalledSendIsEvictedWithoutBlockingOtherSubscribers() throws InterruptedException {
+        hub = new TestHub(1, 50);
+        RecordingEmitter stalled = hub.open(1, Mode.BLOCK);
+        awaitTrue(() -> stalled.sending);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        hub.evictStalled();
+
+        assertThat(hub.size()).isZero();
+        assertThat(hub.evicted()).isEqualTo(1);
+        // Единственный поток рассылки занят, но пул получил дополнительный
+        RecordingEmitter next = hub.open(1, Mode.RECORD);
+        awaitTrue(() -> next.sent.size() == 1);
+
+        release.countDown();
+        awaitTrue(() -> stalled.completed);
+    }
+
+    @Test
+    void disconnectedSubscriberIsRemoved() {
+        hub = new TestHub(4, 5000);
+        RecordingEmitter disconnected = hub.open(1, Mode.FAIL);
+        RecordingEmitter connected = hub.open(1, Mode.RECORD);
+
+        awaitTrue(() -> hub.size() == 1);
+        hub.onCommentChanged(new CommentChangedEvent(1, CommentChangedEvent.Type.UPDATED, comment(11)));
+
+        awaitTrue(() -> connected.sent.size() == 2);
+        assertThat(disconnected.attempts).isEqualTo(1);
+        assertThat(hub.evicted()).isZero();
+    }
+
+    private static Comment comment(int pk) {
+        return Comment.builder().pk(pk).text("Комментарий").build();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("условие не выполнилось за 5 секунд").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+    private enum Mode { RECORD, BLOCK, FAIL }
+
+    /**
+     * Хаб, создающий эмиттеры без сервлет-контейнера.
+     */
+    private final class TestHub extends CommentStreamHub {
+        private final SimpleMeterRegistry registry;
+        private Mode mode;
+
+        TestHub(int dispatcherThreads, long writeTimeoutMs) {
+            this(new SimpleMeterRegistry(), dispatcherThreads, writeTimeoutMs);
+        }
+
+        private TestHub(SimpleMeterRegistry registry, int dispatcherThreads, long writeTimeoutMs) {
+            super(new ObjectMapper(), registry, 100, BUFFER_SIZE, 60_000, 3000, dispatcherThreads, writeTimeoutMs);
+            this.registry = registry;
+        }
+
+        RecordingEmitter open(int adId, Mode mode) {
+            this.mode = mode;
+            return (RecordingEmitter) subscribe(adId);
+        }
+
+        double evicted() {
+            return registry.counter("comments.stream.evicted").count();
+        }
+
+        @Override
+        SseEmitter newEmitter(long timeoutMs) {
+            return new RecordingEmitter(mode);
+        }
+    }
+
+    /**
+     * Эмиттер, который запоминает отправленные события, блокирует отправку до конца теста
+     * или отклоняет ее, как при отключении клиента.
+     */
+    private final class RecordingEmitter extends SseEmitter {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final Mode mode;
+        volatile boolean sending;
+        volatile boolean completed;
+        volatile int attempts;
+
+        RecordingEmitter(Mode mode) {
+            this.mode = mode;
+        }
+
+        // Как и в SseEmitter, отправка и закрытие выполняются под блокировкой эмиттера
+        @Override
+        public synchronized void send(SseEventBuilder builder) throws IOException {
+            attempts++;
+            if (mode == Mode.FAIL) {
+                throw new IOException("клиент отключился");
+            }
+            if (mode == Mode.BLOCK) {
+                sending = true;
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("таймаут записи");
+            }
+            sent.add(builder.build().stream()
+                    .map(part -> part.getData().toString())
+                    .collect(Collectors.joining()));
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+            super.complete();
+        }
+    }
+}
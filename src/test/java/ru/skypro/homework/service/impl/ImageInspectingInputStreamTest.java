@@ -0,0 +1,176 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет определение формата по сигнатуре и чтение размеров из заголовков PNG и JPEG.
+ */
+class ImageInspectingInputStreamTest {
+
+    @Test
+    void pngDimensionsAreReadFromIhdr() throws Exception {
+        byte[] png = png(640, 480);
+
+        ImageInspectingInputStream in = inspect(png);
+
+        assertThat(in.getFormat()).isEqualTo(ImageFormat.PNG);
+        assertThat(in.hasDimensions()).isTrue();
+        assertThat(in.getWidth()).isEqualTo(640);
+        assertThat(in.getHeight()).isEqualTo(480);
+        assertThat(in.getSize()).isEqualTo(png.length);
+        assertThat(in.getChecksum()).isEqualTo(sha256(png));
+    }
+
+    @Test
+    void jpegDimensionsAreReadFromFrameHeaderAfterOtherSegments() throws IOException {
+        ImageInspectingInputStream in = inspect(jpeg(1920, 1080));
+
+        assertThat(in.getFormat()).isEqualTo(ImageFormat.JPEG);
+        assertThat(in.hasDimensions()).isTrue();
+        assertThat(in.getWidth()).isEqualTo(1920);
+        assertThat(in.getHeight()).isEqualTo(1080);
+    }
+
+    @Test
+    void headersSplitAcrossSingleByteReadsAreParsed() throws IOException {
+        byte[] jpeg = jpeg(300, 200);
+        ImageInspectingInputStream in = new ImageInspectingInputStream(
+                new ByteArrayInputStream(jpeg), ImageFormat.detect(jpeg, jpeg.length));
+
+        while (in.read() >= 0) {
+            // Побайтовое чтение
+        }
+
+        assertThat(in.getWidth()).isEqualTo(300);
+        assertThat(in.getHeight()).isEqualTo(200);
+    }
+
+    @Test
+    void truncatedPngHeaderHasNoDimensions() throws IOException {
+        byte[] png = png(640, 480);
+
+        // Обрыв внутри высоты: частично прочитанное значение не должно считаться размером
+        assertThat(inspect(Arrays.copyOf(png, 23)).hasDimensions()).isFalse();
+        assertThat(inspect(Arrays.copyOf(png, 16)).hasDimensions()).isFalse();
+    }
+
+    @Test
+    void truncatedJpegHeaderHasNoDimensions() throws IOException {
+        byte[] jpeg = jpeg(1920, 1080);
+        int frame = indexOfFrameHeader(jpeg);
+
+        // Обрыв внутри ширины и внутри пропускаемого сегмента APP0
+        assertThat(inspect(Arrays.copyOf(jpeg, frame + 8)).hasDimensions()).isFalse();
+        assertThat(inspect(Arrays.copyOf(jpeg, 10)).hasDimensions()).isFalse();
+    }
+
+    @Test
+    void spoofedSignatureIsNotAnImage() throws IOException {
+        // Сигнатура PNG, за которой нет чанка IHDR
+        byte[] png = png(640, 480);
+        png[12] = 'X';
+        assertThat(inspect(png).hasDimensions()).isFalse();
+
+        // Сигнатура JPEG, за которой идет текст
+        byte[] jpeg = concat(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}, "<script>".getBytes());
+        assertThat(ImageFormat.detect(jpeg, jpeg.length)).isEqualTo(ImageFormat.JPEG);
+        assertThat(inspect(jpeg).hasDimensions()).isFalse();
+    }
+
+    @Test
+    void unknownSignatureIsRejected() {
+        byte[] gif = "GIF89a\u0001\u0000".getBytes();
+
+        assertThat(ImageFormat.detect(gif, gif.length)).isNull();
+        assertThat(ImageFormat.detect(new byte[]{(byte) 0x89, 'P', 'N'}, 3)).isNull();
+    }
+
+    @Test
+    void pngDimensionsBeyondSpecificationAreRejected() throws IOException {
+        assertThat(inspect(png(0x80000000, 10)).hasDimensions()).isFalse();
+        assertThat(inspect(png(10, 0xFFFFFFFF)).hasDimensions()).isFalse();
+        assertThat(inspect(png(0, 10)).hasDimensions()).isFalse();
+
+        ImageInspectingInputStream largest = inspect(png(Integer.MAX_VALUE, 1));
+        assertThat(largest.hasDimensions()).isTrue();
+        assertThat(largest.getWidth()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void jpegDimensionsUpToLimitAreAccepted() throws IOException {
+        ImageInspectingInputStream in = inspect(jpeg(65535, 65535));
+
+        assertThat(in.getWidth()).isEqualTo(65535);
+        assertThat(in.getHeight()).isEqualTo(65535);
+        assertThat(inspect(jpeg(0, 100)).hasDimensions()).isFalse();
+    }
+
+    private static ImageInspectingInputStream inspect(byte[] content) throws IOException {
+        ImageFormat format = ImageFormat.detect(content, content.length);
+        ImageInspectingInputStream in = new ImageInspectingInputStream(new ByteArrayInputStream(content), format);
+        in.readAllBytes();
+        return in;
+    }
+
+    private static byte[] png(int width, int height) {
+        return ByteBuffer.allocate(8 + 8 + 13 + 4 + 12)
+                .put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'})
+                .putInt(13).put("IHDR".getBytes())
+                .putInt(width).putInt(height)
+                .put(new byte[]{8, 6, 0, 0, 0})
+                .putInt(0)
+                .putInt(0).put("IEND".getBytes()).putInt(0)
+                .array();
+    }
+
+    /**
+     * SOI, APP0 (JFIF), DQT, заполнитель, SOF0 с размерами, SOS и EOI.
+     */
+    private static byte[] jpeg(int width, int height) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+        // Длина сегмента включает два байта самой длины
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xDB, 0, 67});
+        out.writeBytes(new byte[65]);
+        out.write(0xFF);
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xC0, 0, 11, 8,
+                (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 1, 1, 0x11, 0});
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 8, 1, 1, 0, 0, 63, 0, 0x12, 0x34});
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xD9});
+        return out.toByteArray();
+    }
+
+    private static int indexOfFrameHeader(byte[] jpeg) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if (jpeg[i] == (byte) 0xFF && jpeg[i + 1] == (byte) 0xC0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("нет SOF0");
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет, что отсутствие изображения, найденное до его загрузки, не запоминается после нее.
+ */
+class MissingImageCacheTest {
+
+    private final MissingImageCache cache = new MissingImageCache(new SimpleMeterRegistry(), 60, 1000);
+
+    @Test
+    void missingImageIsRemembered() {
+        long generation = cache.generation("ads", 1);
+
+        cache.markMissing("ads", 1, generation);
+
+        assertThat(cache.isMissing("ads", 1)).isTrue();
+        assertThat(cache.isMissing("users", 1)).isFalse();
+    }
+
+    @Test
+    void uploadInvalidatesRememberedMissingImage() {
+        cache.markMissing("ads", 1, cache.generation("ads", 1));
+
+        cache.invalidate("ads", 1);
+
+        assertThat(cache.isMissing("ads", 1)).isFalse();
+    }
+
+    @Test
+    void lookupStartedBeforeUploadDoesNotRememberMissingImage() {
+        // Запрос прочитал старый путь до фиксации загрузки
+        long generation = cache.generation("users", 7);
+        // Загрузка зафиксирована и сбросила запись
+        cache.invalidate("users", 7);
+        // Запрос завершился и сообщает об отсутствии изображения
+        cache.markMissing("users", 7, generation);
+
+        assertThat(cache.isMissing("users", 7)).isFalse();
+    }
+
+    @Test
+    void lookupStartedAfterUploadRemembersMissingImage() {
+        cache.invalidate("users", 7);
+        long generation = cache.generation("users", 7);
+
+        cache.markMissing("users", 7, generation);
+
+        assertThat(cache.isMissing("users", 7)).isTrue();
+    }
+
+    @Test
+    void unknownSubdirIsRejected() {
+        assertThatThrownBy(() -> cache.generation("comments", 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,138 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.entity.UserEntity;
+import ru.skypro.homework.event.ImageDeletionEvent;
+import ru.skypro.homework.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверяет, когда загруженный аватар удаляется при ошибке сохранения:
+ * только если транзакция не зафиксирована.
+ */
+class UserServiceImplImageTransactionTest {
+
+    private static final String EMAIL = "user@example.com";
+    private static final String NEW_IMAGE = "users/new.png";
+
+    private final List<Object> events = new ArrayList<>();
+    private final TestTransactionManager transactionManager = new TestTransactionManager();
+    private UserRepository userRepository;
+    private UserServiceImpl userService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        FileService fileService = mock(FileService.class);
+        when(fileService.saveImageAsync(any(), anyString())).thenReturn(CompletableFuture.completedFuture(NEW_IMAGE));
+
+        UserEntity user = new UserEntity();
+        user.setId(1);
+        user.setEmail(EMAIL);
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.of(user));
+
+        ApplicationEventPublisher publisher = events::add;
+        userService = new UserServiceImpl(userRepository, null, null, fileService, publisher,
+                new TransactionTemplate(transactionManager), mock(MissingImageCache.class), null, null,
+                mock(UserLookupCache.class));
+    }
+
+    @Test
+    void errorAfterCommitKeepsUploadedFile() {
+        // Запись зафиксирована, но обработчик после фиксации завершился с ошибкой
+        when(userRepository.save(any())).thenAnswer(invocation -> {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    throw new IllegalStateException("ошибка обработчика после фиксации");
+                }
+            });
+            return invocation.getArgument(0);
+        });
+
+        assertThatThrownBy(() -> userService.updateUserImage(image(), authentication()).join())
+                .hasRootCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(transactionManager.committed).isTrue();
+        assertThat(deletionsOf(NEW_IMAGE)).allMatch(ImageDeletionEvent::isOnRollback);
+    }
+
+    @Test
+    void failureToBeginTransactionDeletesUploadedFile() {
+        transactionManager.failOnBegin = true;
+
+        assertThatThrownBy(() -> userService.updateUserImage(image(), authentication()).join())
+                .hasCauseInstanceOf(CannotCreateTransactionException.class);
+
+        assertThat(deletionsOf(NEW_IMAGE)).anyMatch(event -> !event.isOnRollback());
+    }
+
+    private List<ImageDeletionEvent> deletionsOf(String path) {
+        return events.stream()
+                .filter(ImageDeletionEvent.class::isInstance)
+                .map(ImageDeletionEvent.class::cast)
+                .filter(event -> path.equals(event.getPath()))
+                .collect(Collectors.toList());
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("image", "avatar.png", "image/png", new byte[]{1, 2, 3});
+    }
+
+    private static Authentication authentication() {
+        return new TestingAuthenticationToken(EMAIL, null);
+    }
+
+    /**
+     * Менеджер транзакций без ресурса: выполняет синхронизации транзакций, как настоящий.
+     */
+    private static final class TestTransactionManager extends AbstractPlatformTransactionManager {
+        boolean failOnBegin;
+        boolean committed;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            if (failOnBegin) {
+                throw new CannotCreateTransactionException("база данных недоступна");
+            }
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            committed = true;
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.skypro.homework.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Проверяет асинхронное чтение файлов, в том числе при переполненном пуле ввода-вывода.
+ */
+class FileSystemImageStoreTest {
+
+    private static final Path OPEN_FILES = Paths.get("/proc/self/fd");
+
+    @TempDir
+    Path root;
+
+    @Test
+    void loadAsyncReadsWholeFile() throws Exception {
+        FileSystemImageStore store = new FileSystemImageStore(root.toString());
+        byte[] content = new byte[100_000];
+        content[content.length - 1] = 7;
+        store.save("ads/a.png", new ByteArrayInputStream(content), content.length);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertThat(store.loadAsync("ads/a.png", executor).join()).isEqualTo(content);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectedReadClosesFile() throws Exception {
+        assumeTrue(Files.isDirectory(OPEN_FILES), "нужен /proc/self/fd");
+        FileSystemImageStore store = new FileSystemImageStore(root.toString());
+        store.save("ads/a.png", new ByteArrayInputStream(new byte[]{1, 2, 3}), 3);
+
+        long before = openFiles();
+        for (int i = 0; i < 50; i++) {
+            // Пул принимает задачу открытия файла, но отклоняет само чтение
+            assertThatThrownBy(() -> store.loadAsync("ads/a.png", new RejectingAfterFirstTask()).join())
+                    .isInstanceOf(CompletionException.class)
+                    .hasRootCauseInstanceOf(RejectedExecutionException.class);
+        }
+        assertThat(openFiles()).isLessThan(before + 10);
+    }
+
+    private static long openFiles() throws Exception {
+        try (Stream<Path> files = Files.list(OPEN_FILES)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Выполняет первую задачу в вызывающем потоке, остальные отклоняет, как переполненный пул.
+     */
+    private static final class RejectingAfterFirstTask extends AbstractExecutorService {
+        private final AtomicInteger tasks = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            if (tasks.getAndIncrement() > 0) {
+                throw new RejectedExecutionException("пул переполнен");
+            }
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
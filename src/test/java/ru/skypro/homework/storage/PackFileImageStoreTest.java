@@ -0,0 +1,203 @@
+package ru.skypro.homework.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет запись, удаление, уплотнение и восстановление после сбоя хранилища в сегментах.
+ */
+class PackFileImageStoreTest {
+
+    /** Две записи по 100 байт с коротким ключом занимают сегмент целиком */
+    private static final long SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path root;
+
+    private PackFileImageStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void savedImageIsReadBack() throws IOException {
+        store = open();
+        byte[] image = image(1);
+
+        store.save("a", new ByteArrayInputStream(image), image.length);
+
+        assertThat(store.exists("a")).isTrue();
+        assertThat(store.load("a")).isEqualTo(image);
+        assertThat(store.stream("a").readAllBytes()).isEqualTo(image);
+        List<StoredImage> listed = new ArrayList<>();
+        store.list(listed::add);
+        assertThat(listed).extracting(StoredImage::getKey).containsExactly("a");
+    }
+
+    @Test
+    void overwriteReplacesAndDeleteRemovesImage() throws IOException {
+        store = open();
+        save("a", image(1));
+        save("a", image(2));
+
+        assertThat(store.load("a")).isEqualTo(image(2));
+
+        assertThat(store.delete("a")).isTrue();
+        assertThat(store.delete("a")).isFalse();
+        assertThat(store.exists("a")).isFalse();
+        assertThatThrownBy(() -> store.load("a")).isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void compactionMovesLiveImagesAndRemovesSegment() throws IOException {
+        store = open();
+        save("a", image(1));
+        save("b", image(2));
+        save("c", image(3));
+        store.delete("a");
+
+        assertThat(store.compact()).isPositive();
+
+        assertThat(segment(1)).doesNotExist();
+        assertThat(store.load("b")).isEqualTo(image(2));
+        assertThat(store.load("c")).isEqualTo(image(3));
+        assertThat(store.exists("a")).isFalse();
+
+        store.close();
+        store = open();
+        assertThat(store.load("b")).isEqualTo(image(2));
+        assertThat(store.load("c")).isEqualTo(image(3));
+        assertThat(store.exists("a")).isFalse();
+    }
+
+    @Test
+    void failedIndexRewriteKeepsStoreWritable() throws IOException {
+        store = open();
+        save("a", image(1));
+        save("b", image(2));
+        save("c", image(3));
+        store.delete("a");
+        // Непустой каталог на месте журнала индекса не дает заменить его снимком
+        Files.delete(root.resolve("index.log"));
+        Files.createDirectories(root.resolve("index.log").resolve("blocker"));
+
+        assertThatThrownBy(() -> store.compact()).isInstanceOf(IOException.class);
+
+        save("d", image(4));
+        assertThat(store.delete("b")).isTrue();
+        assertThat(store.load("d")).isEqualTo(image(4));
+        assertThat(root.resolve("index.log.tmp")).doesNotExist();
+    }
+
+    @Test
+    void reopenRestoresIndex() throws IOException {
+        store = open();
+        save("a", image(1));
+        save("b", image(2));
+        save("a", image(3));
+        store.delete("b");
+        store.close();
+
+        store = open();
+
+        assertThat(store.load("a")).isEqualTo(image(3));
+        assertThat(store.exists("b")).isFalse();
+    }
+
+    @Test
+    void tornRecordAtSegmentEndIsDiscarded() throws IOException {
+        store = open();
+        save("a", image(1));
+        store.close();
+        long complete = Files.size(segment(1));
+        // Сбой во время дописывания: длина ключа, ключ и часть данных
+        appendTo(segment(1), ByteBuffer.allocate(20).putInt(1).put((byte) 'b').putInt(100).array());
+
+        store = open();
+
+        assertThat(Files.size(segment(1))).isEqualTo(complete);
+        assertThat(store.load("a")).isEqualTo(image(1));
+        save("b", image(2));
+        store.close();
+        store = open();
+        assertThat(store.load("b")).isEqualTo(image(2));
+    }
+
+    @Test
+    void indexEntryBeyondSegmentEndIsDropped() throws IOException {
+        store = open();
+        save("a", image(1));
+        long complete = Files.size(segment(1));
+        save("b", image(2));
+        store.close();
+        // Журнал индекса сохранился, а конец сегмента нет
+        try (FileChannel channel = FileChannel.open(segment(1), StandardOpenOption.WRITE)) {
+            channel.truncate(complete + 10);
+        }
+
+        store = open();
+
+        assertThat(Files.size(segment(1))).isEqualTo(complete);
+        assertThat(store.load("a")).isEqualTo(image(1));
+        assertThat(store.exists("b")).isFalse();
+    }
+
+    @Test
+    void tornIndexEntryIsDiscarded() throws IOException {
+        store = open();
+        save("a", image(1));
+        store.close();
+        appendTo(root.resolve("index.log"), new byte[]{1, 0, 5, 'b'});
+
+        store = open();
+
+        assertThat(store.load("a")).isEqualTo(image(1));
+        save("b", image(2));
+        store.close();
+        store = open();
+        assertThat(store.load("a")).isEqualTo(image(1));
+        assertThat(store.load("b")).isEqualTo(image(2));
+    }
+
+    private PackFileImageStore open() throws IOException {
+        PackFileImageStore opened = new PackFileImageStore(root.toString(), SEGMENT_SIZE, 65536, 0.5, 3600, 0);
+        opened.open();
+        return opened;
+    }
+
+    private void save(String key, byte[] image) throws IOException {
+        store.save(key, new ByteArrayInputStream(image), image.length);
+    }
+
+    private Path segment(int number) {
+        return root.resolve(String.format("segment-%06d.pack", number));
+    }
+
+    private static void appendTo(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+    }
+
+    private static byte[] image(int fill) {
+        byte[] image = new byte[100];
+        Arrays.fill(image, (byte) fill);
+        return image;
+    }
+}
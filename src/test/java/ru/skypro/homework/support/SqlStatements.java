@@ -0,0 +1,53 @@
+package ru.skypro.homework.support;
+
+import org.springframework.test.web.servlet.ResultMatcher;
+import ru.skypro.homework.filter.SqlStatisticsFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверки числа SQL-запросов, выполненных при обработке HTTP-запроса в MockMvc.
+ *
+ * <p>Число берется из заголовка {@value SqlStatisticsFilter#STATEMENTS_HEADER}, поэтому тест
+ * должен включить его свойствами {@code app.sql-statistics.enabled=true} и
+ * {@code app.sql-statistics.response-headers=true}. Чтобы результат не зависел от порядка
+ * тестов, кэш второго уровня Hibernate в таких тестах стоит выключить.</p>
+ *
+ * <pre>{@code
+ * mockMvc.perform(get("/ads/{id}/comments", adId))
+ *         .andExpect(status().isOk())
+ *         .andExpect(SqlStatements.count(2));
+ * }</pre>
+ */
+public final class SqlStatements {
+
+    private SqlStatements() {
+    }
+
+    /**
+     * @param expected ожидаемое число обращений к базе данных
+     * @return проверка точного числа обращений
+     */
+    public static ResultMatcher count(int expected) {
+        return result -> assertThat(statements(result.getResponse().getHeader(SqlStatisticsFilter.STATEMENTS_HEADER)))
+                .as("SQL-запросы %s %s", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isEqualTo(expected);
+    }
+
+    /**
+     * @param max наибольшее допустимое число обращений к базе данных
+     * @return проверка, что обращений не больше {@code max}
+     */
+    public static ResultMatcher atMost(int max) {
+        return result -> assertThat(statements(result.getResponse().getHeader(SqlStatisticsFilter.STATEMENTS_HEADER)))
+                .as("SQL-запросы %s %s", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isLessThanOrEqualTo(max);
+    }
+
+    private static int statements(String header) {
+        assertThat(header)
+                .as("заголовок %s; включены ли app.sql-statistics.*?", SqlStatisticsFilter.STATEMENTS_HEADER)
+                .isNotNull();
+        return Integer.parseInt(header);
+    }
+}
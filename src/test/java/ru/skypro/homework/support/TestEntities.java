@@ -0,0 +1,71 @@
+package ru.skypro.homework.support;
+
+import ru.skypro.homework.dto.Role;
+import ru.skypro.homework.entity.AdEntity;
+import ru.skypro.homework.entity.CommentEntity;
+import ru.skypro.homework.entity.UserEntity;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Несохраненные сущности с заполненными обязательными полями для тестов с базой данных.
+ * Сохраняет их сам тест: через репозиторий или {@code TestEntityManager}.
+ *
+ * <pre>{@code
+ * UserEntity author = userRepository.save(TestEntities.user());
+ * AdEntity ad = adRepository.save(TestEntities.ad(author));
+ * }</pre>
+ */
+public final class TestEntities {
+
+    /** Начало отсчета дат создания комментариев */
+    public static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    /** Email уникален в пределах JVM, поэтому тесты с общей базой не мешают друг другу */
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    private TestEntities() {
+    }
+
+    /**
+     * @return пользователь с уникальным email и ролью USER
+     */
+    public static UserEntity user() {
+        int number = USERS.incrementAndGet();
+        UserEntity user = new UserEntity();
+        user.setEmail("user" + number + "@example.com");
+        user.setPassword("password");
+        user.setFirstName("Имя" + number);
+        user.setRole(Role.USER);
+        return user;
+    }
+
+    /**
+     * @param author автор объявления
+     * @return объявление без комментариев
+     */
+    public static AdEntity ad(UserEntity author) {
+        AdEntity ad = new AdEntity();
+        ad.setTitle("Объявление");
+        ad.setPrice(100);
+        ad.setDescription("Описание объявления");
+        ad.setAuthor(author);
+        return ad;
+    }
+
+    /**
+     * @param ad        объявление
+     * @param author    автор комментария
+     * @param createdAt дата создания
+     * @return комментарий
+     */
+    public static CommentEntity comment(AdEntity ad, UserEntity author, LocalDateTime createdAt) {
+        CommentEntity comment = new CommentEntity();
+        comment.setText("Комментарий");
+        comment.setCreatedAt(createdAt);
+        comment.setAd(ad);
+        comment.setAuthor(author);
+        return comment;
+    }
+}